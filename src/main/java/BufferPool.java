@@ -0,0 +1,168 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of reusable direct buffers for batch work (rekey, ingest), so
+ * processing many files does not allocate buffers proportional to file size.
+ *
+ * Slabs come in power-of-two size classes from 4 KB to 4 MB. Each thread
+ * keeps one released slab per class for itself; further releases go to a
+ * shared queue of at most maxPerClass slabs per class, and anything beyond
+ * that is left to the garbage collector. Requests above the largest class
+ * get an unpooled slab. outstanding() counts acquired but unreleased slabs,
+ * so tests can detect leaks. Every acquire returns a new Slab handle on the
+ * pooled buffers, so a stale handle whose buffers have since been handed to
+ * someone else still fails on close or use instead of releasing them again.
+ */
+public class BufferPool {
+    static final int MIN_SLAB_SIZE = 4 * 1024;
+    static final int MAX_SLAB_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SLAB_SIZE);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_SLAB_SIZE) - MIN_SHIFT + 1;
+
+    private static final BufferPool SHARED = new BufferPool(Runtime.getRuntime().availableProcessors());
+
+    private final int maxPerClass;
+    private final ConcurrentLinkedQueue<Buffers>[] shared;
+    private final AtomicInteger[] sharedCounts;
+    private final ThreadLocal<Buffers[]> local = ThreadLocal.withInitial(() -> new Buffers[CLASS_COUNT]);
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int maxPerClass) {
+        this.maxPerClass = Math.max(0, maxPerClass);
+        this.shared = new ConcurrentLinkedQueue[CLASS_COUNT];
+        this.sharedCounts = new AtomicInteger[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            shared[i] = new ConcurrentLinkedQueue<>();
+            sharedCounts[i] = new AtomicInteger();
+        }
+    }
+
+    // Process-wide pool used by FileHandler
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a slab whose byte and char buffers each hold at least minSize
+     * elements, both cleared. Close the slab to give it back.
+     */
+    public Slab acquire(int minSize) {
+        if (minSize < 0) {
+            throw new IllegalArgumentException("Slab size must not be negative: " + minSize);
+        }
+        outstanding.incrementAndGet();
+        if (minSize > MAX_SLAB_SIZE) {
+            return new Slab(this, new Buffers(-1, minSize));
+        }
+
+        int sizeClass = sizeClass(minSize);
+        Buffers[] cache = local.get();
+        Buffers buffers = cache[sizeClass];
+        if (buffers != null) {
+            cache[sizeClass] = null;
+        } else {
+            buffers = shared[sizeClass].poll();
+            if (buffers != null) {
+                sharedCounts[sizeClass].decrementAndGet();
+            } else {
+                buffers = new Buffers(sizeClass, MIN_SLAB_SIZE << sizeClass);
+            }
+        }
+        buffers.reset();
+        return new Slab(this, buffers);
+    }
+
+    // Number of slabs acquired and not yet released; zero when nothing leaked
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    private void release(Buffers buffers) {
+        outstanding.decrementAndGet();
+        int sizeClass = buffers.sizeClass;
+        if (sizeClass < 0) {
+            return;
+        }
+        Buffers[] cache = local.get();
+        if (cache[sizeClass] == null) {
+            cache[sizeClass] = buffers;
+        } else if (sharedCounts[sizeClass].incrementAndGet() <= maxPerClass) {
+            shared[sizeClass].offer(buffers);
+        } else {
+            sharedCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    private static int sizeClass(int minSize) {
+        if (minSize <= MIN_SLAB_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(minSize - 1) - MIN_SHIFT;
+    }
+
+    // One acquire's hold on a pair of pooled buffers, given back on close. Closing
+    // or using it after close fails, even once the buffers belong to a later acquire.
+    public static final class Slab implements AutoCloseable {
+        private final BufferPool pool;
+        private final Buffers buffers;
+        private boolean released;
+
+        private Slab(BufferPool pool, Buffers buffers) {
+            this.pool = pool;
+            this.buffers = buffers;
+        }
+
+        public ByteBuffer bytes() {
+            checkHeld();
+            return buffers.bytes;
+        }
+
+        public CharBuffer chars() {
+            checkHeld();
+            return buffers.chars;
+        }
+
+        public int capacity() {
+            return buffers.bytes.capacity();
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                throw new IllegalStateException("Buffer slab released twice");
+            }
+            released = true;
+            pool.release(buffers);
+        }
+
+        private void checkHeld() {
+            if (released) {
+                throw new IllegalStateException("Buffer slab used after release");
+            }
+        }
+    }
+
+    // A direct byte buffer and a direct char buffer of the same length; this is what the pool keeps.
+    // Buffers over the largest size class (sizeClass -1) are counted but not kept.
+    private static final class Buffers {
+        final int sizeClass;
+        final ByteBuffer bytes;
+        final CharBuffer chars;
+
+        Buffers(int sizeClass, int size) {
+            this.sizeClass = sizeClass;
+            this.bytes = ByteBuffer.allocateDirect(size);
+            this.chars = ByteBuffer.allocateDirect(size * 2).order(ByteOrder.nativeOrder()).asCharBuffer();
+        }
+
+        void reset() {
+            bytes.clear();
+            chars.clear();
+        }
+    }
+}
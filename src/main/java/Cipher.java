@@ -1,29 +1,120 @@
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32C;
 
-// Deciphers text using substitution cipher from key file
+// Deciphers text using substitution cipher from key file.
+// Immutable once constructed, so one instance can be shared between threads.
 public class Cipher {
-    private Map<Character, Character> decipherMap;
-    private String keyFilePath;
+    static final int TRANSLATE_BUFFER_SIZE = 64 * 1024;
+    // 0x89 cannot start a UTF-8 text key, so compiled and text keys are never confused
+    private static final int COMPILED_MAGIC = 0x8954534B; // 0x89 "TSK"
+    private static final int COMPILED_VERSION = 1;
+    private static final int COMPILED_HEADER_SIZE = 16;
+    // Payload fields before the tables: flags, alphabet ordinal, decipher and encipher table lengths
+    private static final int COMPILED_TABLES_PREFIX = 16;
+    private static final int FLAG_ROUND_TRIP = 1;
+
+    // decipherTable[c] is the actual character for cipher character c; chars past the end are unchanged
+    private final char[] decipherTable;
+    // encipherTable[c] is the cipher character for actual character c; the inverse of decipherTable
+    private final char[] encipherTable;
+    // 256-bit set of byte values whose ASCII character the key actually changes (identity pairs excluded)
+    private final long[] changedAsciiBytes;
+    private final boolean identity;
+    private final boolean roundTrip;
+    private final DecipherEngine.Alphabet alphabet;
+    private final String keyFilePath;
 
     // Loads and validates cipher key from file
     public Cipher(String keyFilePath) throws IOException {
         this.keyFilePath = keyFilePath;
-        this.decipherMap = new HashMap<>();
-        loadAndValidateKey();
+        KeyTables key = readKey(keyFilePath);
+        this.decipherTable = key.decipherTable;
+        this.encipherTable = key.encipherTable;
+        this.roundTrip = key.roundTrip;
+        this.alphabet = key.alphabet;
+        this.changedAsciiBytes = new long[4];
+        boolean changesAnything = false;
+        for (int c = 0; c < decipherTable.length; c++) {
+            if (decipherTable[c] != c) {
+                changesAnything = true;
+                if (c < 128) {
+                    changedAsciiBytes[c >>> 6] |= 1L << c;
+                }
+            }
+        }
+        this.identity = !changesAnything;
     }
 
-    // Reads key file (2 lines), validates format, and builds decipher map
-    private void loadAndValidateKey() throws IOException {
+    // Everything a key file defines, whether it was read as text or compiled
+    private static final class KeyTables {
+        final int pairs;
+        final char[] decipherTable;
+        final char[] encipherTable;
+        final boolean roundTrip;
+        final DecipherEngine.Alphabet alphabet;
+
+        KeyTables(int pairs, char[] decipherTable, char[] encipherTable, boolean roundTrip,
+                  DecipherEngine.Alphabet alphabet) {
+            this.pairs = pairs;
+            this.decipherTable = decipherTable;
+            this.encipherTable = encipherTable;
+            this.roundTrip = roundTrip;
+            this.alphabet = alphabet;
+        }
+
+        // Builds the tables from a cipher-to-actual map
+        static KeyTables of(Map<Character, Character> decipherMap) {
+            Map<Character, Character> encipherMap = new HashMap<>();
+            boolean roundTrip = true;
+            for (Map.Entry<Character, Character> entry : decipherMap.entrySet()) {
+                encipherMap.put(entry.getValue(), entry.getKey());
+                roundTrip &= decipherMap.containsKey(entry.getValue());
+            }
+            return new KeyTables(decipherMap.size(), buildTable(decipherMap), buildTable(encipherMap), roundTrip,
+                    classifyAlphabet(decipherMap));
+        }
+    }
+
+    // ASCII if every key character is below 128, SUPPLEMENTARY if any is a surrogate, BMP otherwise
+    private static DecipherEngine.Alphabet classifyAlphabet(Map<Character, Character> map) {
+        DecipherEngine.Alphabet alphabet = DecipherEngine.Alphabet.ASCII;
+        for (Map.Entry<Character, Character> entry : map.entrySet()) {
+            for (char c : new char[]{entry.getKey(), entry.getValue()}) {
+                if (Character.isSurrogate(c)) {
+                    return DecipherEngine.Alphabet.SUPPLEMENTARY;
+                }
+                if (c >= 128) {
+                    alphabet = DecipherEngine.Alphabet.BMP;
+                }
+            }
+        }
+        return alphabet;
+    }
+
+    // Reads key file (compiled, or 2 lines of UTF-8 text), validates format, and builds the tables
+    private static KeyTables readKey(String keyFilePath) throws IOException {
+        KeyTables compiled = readCompiledKey(keyFilePath);
+        if (compiled != null) {
+            return compiled;
+        }
+
         String line1 = null;
         String line2 = null;
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(keyFilePath))) {
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(keyFilePath), StandardCharsets.UTF_8)) {
             line1 = reader.readLine();
             line2 = reader.readLine();
             String extraLine = reader.readLine();
@@ -42,11 +133,122 @@ public class Cipher {
 
         validateUniqueness(line1, "First");
         validateUniqueness(line2, "Second");
-        buildDecipherMap(line1, line2);
+        return KeyTables.of(buildDecipherMap(line1, line2));
+    }
+
+    /**
+     * Loads a key written by compileKey. Only the 16-byte header is read to
+     * tell a compiled key from a text key; the tables are then read straight
+     * into the arrays the Cipher uses. Validation was done at compile time,
+     * so it is skipped when the checksum matches. Returns null if the file is
+     * not a compiled key.
+     */
+    private static KeyTables readCompiledKey(String keyFilePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(keyFilePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < COMPILED_HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(COMPILED_HEADER_SIZE);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != COMPILED_MAGIC) {
+                return null;
+            }
+            int version = header.getInt();
+            if (version != COMPILED_VERSION) {
+                throw new IllegalArgumentException("Unsupported compiled key version: " + version);
+            }
+            int pairs = header.getInt();
+            int checksum = header.getInt();
+            if (pairs < 0 || size - COMPILED_HEADER_SIZE > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Compiled key file is truncated or corrupt");
+            }
+            ByteBuffer payload = ByteBuffer.allocate((int) (size - COMPILED_HEADER_SIZE));
+            readFully(channel, payload);
+            payload.flip();
+            CRC32C crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IllegalArgumentException("Compiled key checksum mismatch");
+            }
+            return readTables(pairs, payload);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                throw new IllegalArgumentException("Compiled key file is truncated or corrupt");
+            }
+        }
+    }
+
+    // Flags, alphabet, both table lengths, then both tables
+    private static KeyTables readTables(int pairs, ByteBuffer payload) {
+        if (payload.remaining() < COMPILED_TABLES_PREFIX) {
+            throw new IllegalArgumentException("Compiled key file is truncated or corrupt");
+        }
+        int flags = payload.getInt();
+        int alphabet = payload.getInt();
+        int decipherLength = payload.getInt();
+        int encipherLength = payload.getInt();
+        DecipherEngine.Alphabet[] alphabets = DecipherEngine.Alphabet.values();
+        if (alphabet < 0 || alphabet >= alphabets.length || decipherLength < 0 || encipherLength < 0
+                || payload.remaining() != 2L * decipherLength + 2L * encipherLength) {
+            throw new IllegalArgumentException("Compiled key file is truncated or corrupt");
+        }
+        CharBuffer chars = payload.asCharBuffer();
+        char[] decipherTable = new char[decipherLength];
+        char[] encipherTable = new char[encipherLength];
+        chars.get(decipherTable).get(encipherTable);
+        return new KeyTables(pairs, decipherTable, encipherTable, (flags & FLAG_ROUND_TRIP) != 0,
+                alphabets[alphabet]);
+    }
+
+    /**
+     * Validates a text key once and writes it as a compiled key: a versioned
+     * header, then the finished decipher and encipher tables with a CRC32C
+     * checksum, which the constructor loads without re-validating or
+     * rebuilding anything. The file is written to a temp file and moved into
+     * place, so an existing compiled key is never left half-written. Returns
+     * the number of pairs in the key.
+     */
+    public static int compileKey(String textKeyPath, String compiledKeyPath) throws IOException {
+        KeyTables key = readKey(textKeyPath);
+
+        ByteBuffer payload = ByteBuffer.allocate(COMPILED_TABLES_PREFIX
+                + 2 * (key.decipherTable.length + key.encipherTable.length));
+        payload.putInt(key.roundTrip ? FLAG_ROUND_TRIP : 0).putInt(key.alphabet.ordinal())
+                .putInt(key.decipherTable.length).putInt(key.encipherTable.length);
+        payload.asCharBuffer().put(key.decipherTable).put(key.encipherTable);
+        payload.rewind();
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+
+        ByteBuffer file = ByteBuffer.allocate(COMPILED_HEADER_SIZE + payload.remaining());
+        file.putInt(COMPILED_MAGIC).putInt(COMPILED_VERSION).putInt(key.pairs)
+                .putInt((int) crc.getValue()).put(payload);
+        file.flip();
+
+        Path target = Path.of(compiledKeyPath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (file.hasRemaining()) {
+                out.write(file);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return key.pairs;
     }
 
     // Checks that all characters in a line are unique
-    private void validateUniqueness(String line, String lineName) {
+    private static void validateUniqueness(String line, String lineName) {
         Set<Character> seenChars = new HashSet<>();
         for (char c : line.toCharArray()) {
             if (seenChars.contains(c)) {
@@ -57,12 +259,30 @@ public class Cipher {
     }
 
     // Builds map from cipher characters to actual characters
-    private void buildDecipherMap(String actualLine, String cipherLine) {
+    private static Map<Character, Character> buildDecipherMap(String actualLine, String cipherLine) {
+        Map<Character, Character> decipherMap = new HashMap<>();
         for (int i = 0; i < actualLine.length(); i++) {
             char actual = actualLine.charAt(i);
             char cipher = cipherLine.charAt(i);
             decipherMap.put(cipher, actual);
         }
+        return decipherMap;
+    }
+
+    // Flattens a char mapping into a lookup table sized to its largest key
+    private static char[] buildTable(Map<Character, Character> map) {
+        int size = 0;
+        for (char c : map.keySet()) {
+            size = Math.max(size, c + 1);
+        }
+        char[] table = new char[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = (char) i;
+        }
+        for (Map.Entry<Character, Character> entry : map.entrySet()) {
+            table[entry.getKey()] = entry.getValue();
+        }
+        return table;
     }
 
     // Replaces each cipher character with actual character, leaves others unchanged
@@ -70,17 +290,144 @@ public class Cipher {
         if (cipheredText == null) {
             return null;
         }
+        return decipher(cipheredText, engineFor(cipheredText.length()));
+    }
+
+    // Same as decipher(String), run by a specific engine
+    public String decipher(String cipheredText, DecipherEngine engine) {
+        if (cipheredText == null) {
+            return null;
+        }
+        return engine.decipher(cipheredText, decipherTable);
+    }
+
+    // Engine decipher(String) uses for text of this length with this key
+    public DecipherEngine engineFor(int length) {
+        return EngineSelector.current().select(length, alphabet);
+    }
 
-        StringBuilder deciphered = new StringBuilder();
-        for (char c : cipheredText.toCharArray()) {
-            if (decipherMap.containsKey(c)) {
-                deciphered.append(decipherMap.get(c));
-            } else {
-                deciphered.append(c);
+    // Characters this key uses, for engine selection
+    public DecipherEngine.Alphabet alphabet() {
+        return alphabet;
+    }
+
+    // Deciphers chars[offset, offset + length) in place; allocates nothing
+    public void decipher(char[] chars, int offset, int length) {
+        char[] table = decipherTable;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            char c = chars[i];
+            if (c < table.length) {
+                chars[i] = table[c];
+            }
+        }
+    }
+
+    /**
+     * Deciphers as many characters from in as fit into out, advancing both
+     * positions, like CharsetDecoder.decode. Allocates nothing, so callers
+     * that reuse their buffers decipher with no steady-state garbage.
+     * Returns the number of characters deciphered.
+     */
+    public int decipher(CharBuffer in, CharBuffer out) {
+        int n = Math.min(in.remaining(), out.remaining());
+        char[] table = decipherTable;
+        if (in.hasArray() && out.hasArray()) {
+            char[] src = in.array();
+            char[] dst = out.array();
+            int srcPos = in.arrayOffset() + in.position();
+            int dstPos = out.arrayOffset() + out.position();
+            for (int i = 0; i < n; i++) {
+                char c = src[srcPos + i];
+                dst[dstPos + i] = c < table.length ? table[c] : c;
+            }
+            in.position(in.position() + n);
+            out.position(out.position() + n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                char c = in.get();
+                out.put(c < table.length ? table[c] : c);
             }
         }
+        return n;
+    }
+
+    /**
+     * Builds one table that deciphers with this key and re-enciphers with newKey,
+     * so rotating a key never produces plaintext. table[c] is the new cipher
+     * character for old cipher character c; characters past the end of the
+     * table are in neither key and stay unchanged.
+     */
+    char[] rekeyTable(Cipher newKey) {
+        int size = Math.max(decipherTable.length, newKey.encipherTable.length);
+        char[] table = new char[size];
+        for (int i = 0; i < size; i++) {
+            char c = (char) i;
+            char actual = c < decipherTable.length ? decipherTable[c] : c;
+            table[i] = actual < newKey.encipherTable.length ? newKey.encipherTable[actual] : actual;
+        }
+        return table;
+    }
+
+    // Translates chars[from, to) of buf in place through a table; positions are absolute and left unchanged
+    static void translate(CharBuffer buf, int from, int to, char[] table) {
+        for (int i = from; i < to; i++) {
+            char c = buf.get(i);
+            if (c < table.length) {
+                buf.put(i, table[c]);
+            }
+        }
+    }
+
+    // Replaces each actual character with its cipher character, leaves others unchanged
+    public String encipher(String plainText) {
+        if (plainText == null) {
+            return null;
+        }
+
+        char[] chars = new char[plainText.length()];
+        plainText.getChars(0, chars.length, chars, 0);
+        char[] table = encipherTable;
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c < table.length) {
+                chars[i] = table[c];
+            }
+        }
+        return new String(chars);
+    }
+
+    // Table form of decipher() for streaming with translate()
+    char[] decipherTable() {
+        return decipherTable.clone();
+    }
+
+    // Table form of encipher() for streaming with translate()
+    char[] encipherTable() {
+        return encipherTable.clone();
+    }
+
+    /**
+     * True if both key lines use the same set of characters. Only then does
+     * decipher(encipher(text)) return text for every input: otherwise a
+     * character that appears only in the cipher line is left unchanged by
+     * encipher but rewritten by decipher.
+     */
+    public boolean isRoundTrip() {
+        return roundTrip;
+    }
+
+    // True if every pair in the key maps a character to itself, so deciphering changes nothing
+    public boolean isIdentity() {
+        return identity;
+    }
 
-        return deciphered.toString();
+    /**
+     * Returns a 256-bit set (4 longs, bit b set for byte value b) of ASCII
+     * bytes this key changes. A file of only ASCII bytes with none of these
+     * bytes deciphers to itself.
+     */
+    long[] changedAsciiBytes() {
+        return changedAsciiBytes.clone();
     }
 
     // Returns the key file path used by this cipher
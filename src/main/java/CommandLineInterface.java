@@ -1,3 +1,7 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.nio.channels.WritableByteChannel;
+
 // Parses command line args and displays output
 public class CommandLineInterface {
     private ProgramController controller;
@@ -9,7 +13,27 @@ public class CommandLineInterface {
     // Routes args to appropriate handler: list files, display file, or error
     public void run(String[] args) {
         try {
-            if (args.length == 0) {
+            if (args.length > 0 && args[0].equals("--verify")) {
+                handleVerify(args);
+            } else if (args.length > 0 && args[0].equals("--verbose")) {
+                handleVerbose(args);
+            } else if (args.length > 0 && args[0].equals("--calibrate")) {
+                handleCalibrate(args);
+            } else if (args.length > 0 && args[0].equals("--rekey")) {
+                handleRekey(args);
+            } else if (args.length > 0 && args[0].equals("--ingest")) {
+                handleIngest(args);
+            } else if (args.length > 0 && args[0].equals("--mirror")) {
+                handleMirror(args);
+            } else if (args.length > 0 && args[0].equals("--coordinate")) {
+                handleCoordinate(args);
+            } else if (args.length > 0 && args[0].equals("--worker")) {
+                handleWorker(args);
+            } else if (args.length > 0 && args[0].equals("--compile-key")) {
+                handleCompileKey(args);
+            } else if (args.length > 0 && args[0].equals("--pack")) {
+                handlePack(args);
+            } else if (args.length == 0) {
                 handleListFiles();
             } else if (args.length == 1) {
                 handleDisplayFile(args[0], null);
@@ -36,15 +60,133 @@ public class CommandLineInterface {
             return;
         }
 
-        String contents;
-        if (keyPath == null) {
-            contents = controller.getFileContents(fileNumberStr);
-        } else {
-            contents = controller.getFileContents(fileNumberStr, keyPath);
+        // Files the key cannot change are copied straight to stdout without entering the heap
+        System.out.flush();
+        String contents = controller.writeOrGetFileContents(fileNumberStr, keyPath, stdoutChannel());
+        if (contents == null) {
+            System.out.println();
+            return;
         }
         printOutput(contents);
     }
 
+    // Channel on the process's real stdout; deliberately never closed
+    private WritableByteChannel stdoutChannel() {
+        return new FileOutputStream(FileDescriptor.out).getChannel();
+    }
+
+    // Like handleDisplayFile, but checks the file against the checksum manifest and reports the result
+    private void handleVerify(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            printError("Usage: java topsecret --verify [number] [keyfile]");
+            return;
+        }
+        if (!isValidNumber(args[1])) {
+            printError("First argument must be a file number.");
+            return;
+        }
+
+        String keyPath = args.length == 3 ? args[2] : ProgramController.DEFAULT_KEY_PATH;
+        ProgramController.VerifiedContents verified = controller.getVerifiedFileContents(args[1], keyPath);
+        printOutput(verified.getContents());
+        printOutput("Verified: " + verified.getFilename() + " (" + verified.getAlgorithm().getDisplayName() + " OK)");
+    }
+
+    // Displays a file and reports the decipher engine on stderr: --verbose NUMBER [keyfile]
+    private void handleVerbose(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            printError("Usage: java topsecret --verbose [number] [keyfile]");
+            return;
+        }
+        if (!isValidNumber(args[1])) {
+            printError("First argument must be a file number.");
+            return;
+        }
+
+        String keyPath = args.length == 3 ? args[2] : ProgramController.DEFAULT_KEY_PATH;
+        ProgramController.EngineContents result = controller.getFileContentsWithEngine(args[1], keyPath);
+        printOutput(result.getContents());
+        System.err.println("Engine: " + result.getEngine());
+    }
+
+    // Times the decipher engines and saves thresholds for later runs: --calibrate
+    private void handleCalibrate(String[] args) {
+        if (args.length != 1) {
+            printError("Usage: java topsecret --calibrate");
+            return;
+        }
+        printOutput(controller.calibrateEngines());
+    }
+
+    // Rotates the key on every data file: --rekey OLD NEW
+    private void handleRekey(String[] args) {
+        if (args.length != 3) {
+            printError("Usage: java topsecret --rekey [oldkeyfile] [newkeyfile]");
+            return;
+        }
+        printOutput(controller.rekeyDataFiles(args[1], args[2]));
+    }
+
+    // Enciphers a plaintext directory into data/: --ingest SRC_DIR [keyfile]
+    private void handleIngest(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            printError("Usage: java topsecret --ingest [sourcedir] [keyfile]");
+            return;
+        }
+        String keyPath = args.length == 3 ? args[2] : ProgramController.DEFAULT_KEY_PATH;
+        printOutput(controller.ingestFiles(args[1], keyPath));
+    }
+
+    // Keeps a deciphered copy of data/ up to date: --mirror OUT_DIR [keyfile]
+    private void handleMirror(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            printError("Usage: java topsecret --mirror [outdir] [keyfile]");
+            return;
+        }
+        String keyPath = args.length == 3 ? args[2] : ProgramController.DEFAULT_KEY_PATH;
+        printOutput(controller.mirrorDataFiles(args[1], keyPath));
+    }
+
+    // Deciphers data/ across worker JVMs: --coordinate WORKERS OUT_DIR [keyfile] [port] [bindaddress]
+    private void handleCoordinate(String[] args) {
+        if (args.length < 3 || args.length > 6 || !isValidNumber(args[1])
+                || (args.length >= 5 && !isValidNumber(args[4]))) {
+            printError("Usage: java topsecret --coordinate [workers] [outdir] [keyfile] [port] [bindaddress]");
+            return;
+        }
+        String keyPath = args.length >= 4 ? args[3] : ProgramController.DEFAULT_KEY_PATH;
+        int port = args.length >= 5 ? Integer.parseInt(args[4]) : 0;
+        String bindAddress = args.length == 6 ? args[5] : null;
+        printOutput(controller.coordinateDataFiles(Integer.parseInt(args[1]), args[2], keyPath, bindAddress, port));
+    }
+
+    // Serves a coordinator: --worker HOST PORT
+    private void handleWorker(String[] args) {
+        if (args.length != 3 || !isValidNumber(args[2])) {
+            printError("Usage: java topsecret --worker [host] [port]");
+            return;
+        }
+        printOutput(controller.runWorker(args[1], Integer.parseInt(args[2])));
+    }
+
+    // Writes a validated binary key: --compile-key KEYFILE OUTFILE
+    private void handleCompileKey(String[] args) {
+        if (args.length != 3) {
+            printError("Usage: java topsecret --compile-key [keyfile] [outfile]");
+            return;
+        }
+        printOutput(controller.compileKey(args[1], args[2]));
+    }
+
+    // Packs data/ into one container file: --pack [containerfile], default data.pack
+    private void handlePack(String[] args) {
+        if (args.length > 2) {
+            printError("Usage: java topsecret --pack [containerfile]");
+            return;
+        }
+        printOutput(controller.packDataFiles(args.length == 2 ? args[1] : DataContainer.DEFAULT_PATH));
+    }
+
     // Checks if string is a valid integer
     boolean isValidNumber(String str) {
         if (str == null || str.isEmpty()) {
@@ -0,0 +1,600 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Deciphers data/ into an output directory using several worker JVMs.
+ *
+ * The sorted file list is split into byte-balanced shards, a few per worker.
+ * Workers connect over TCP (see Worker), are handed one shard at a time, and
+ * stream back the deciphered files, which the coordinator writes to the
+ * output directory. When no shard is left to hand out, an idle worker is given
+ * a copy of the oldest shard still running elsewhere. The first copy to finish
+ * wins and the other is discarded, so one slow or dead worker cannot hold up
+ * the run. A worker that disconnects has its shard handed out again.
+ *
+ * Local workers are started as child processes of this JVM with the same
+ * class path and working directory. Workers on other nodes can attach with
+ * --worker HOST PORT when a port is given; they need the same data/ and key
+ * paths as the coordinator. The server binds to loopback unless a bind
+ * address is given.
+ *
+ * Every connection starts with a handshake in which both sides prove they
+ * know a shared token (TOPSECRET_TOKEN) by HMAC-SHA256 over fresh nonces, so
+ * the token is never sent and a peer without it is dropped before it sees a
+ * key path or file name. The handshake is the only protection: after it,
+ * file names and deciphered contents cross the network in plaintext, so
+ * remote workers belong on a trusted network or behind a tunnel.
+ *
+ * Protocol, all through DataInput/DataOutput:
+ *   handshake:   coordinator: NONCE_LENGTH bytes; worker: NONCE_LENGTH bytes and a PROOF_LENGTH proof;
+ *                coordinator: its own PROOF_LENGTH proof, or closes the connection if the worker's is wrong
+ *   coordinator: UTF key path, then per shard: int shard id, int count, count x UTF name;
+ *                int DONE when there is nothing left
+ *   worker:      per shard: int shard id, then per file: chunks of int length and the bytes
+ *                ended by int END_OF_FILE (or int FAILED and a UTF message), then long nanoseconds spent
+ */
+public class Coordinator {
+    static final int DONE = -1;
+    static final int FAILED = -1;
+    static final int END_OF_FILE = 0;
+    static final String TOKEN_ENV = "TOPSECRET_TOKEN";
+    static final int NONCE_LENGTH = 32;
+    static final int PROOF_LENGTH = 32;
+    static final String WORKER_ROLE = "worker";
+    static final String COORDINATOR_ROLE = "coordinator";
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    static final int SHARDS_PER_WORKER = 4;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long EXIT_GRACE_MILLIS = 5000;
+
+    private final FileHandler fh;
+
+    public Coordinator(FileHandler fh) {
+        this.fh = fh;
+    }
+
+    /**
+     * Deciphers every data file into outDir using localWorkers child JVMs plus
+     * any remote workers that attach, and returns a summary with per-worker stats.
+     * The server listens on bindAddress (loopback if null) at port, or an
+     * ephemeral port if port is 0 (local workers only). token is the shared
+     * secret workers must prove they know; it is required with a port, and
+     * generated for a local-only run if null.
+     * Throws RuntimeException if outDir is data/, a file fails or every local
+     * worker exits early.
+     */
+    public String coordinate(int localWorkers, String outDir, String keyPath, String bindAddress, int port,
+                             String token) {
+        if (localWorkers < 0 || (localWorkers == 0 && port == 0)) {
+            throw new RuntimeException("Need at least one local worker, or a port for remote workers");
+        }
+        if (token == null || token.isEmpty()) {
+            if (port != 0) {
+                throw new RuntimeException("Set " + TOKEN_ENV + " to a shared secret; remote workers need the same value");
+            }
+            token = hex(nonce());
+        }
+        String sharedToken = token;
+        ProgramController.loadCipher(keyPath);
+        File out = new File(outDir);
+        try {
+            // Plaintext written here would replace the enciphered files
+            if (out.getCanonicalFile().equals(new File(FileHandler.DATA_DIR).getCanonicalFile())) {
+                throw new RuntimeException("Output directory must not be the data directory: " + outDir);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to resolve output directory: " + outDir, e);
+        }
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new RuntimeException("Unable to create output directory: " + outDir);
+        }
+
+        List<String> names = fh.listDataFiles();
+        long[] sizes = new long[names.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = fh.dataFileSize(names.get(i));
+        }
+        List<List<Integer>> partition = shard(sizes, SHARDS_PER_WORKER * Math.max(1, localWorkers));
+        Run run = new Run(names, sizes, partition);
+
+        List<Process> processes = new ArrayList<>();
+        ExecutorService connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "coordinator-connection");
+            t.setDaemon(true);
+            return t;
+        });
+        try (ServerSocket server = new ServerSocket(port, 50, bindAddress == null
+                ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress))) {
+            connections.execute(() -> accept(server, run, out, keyPath, sharedToken, connections));
+            try {
+                for (int i = 0; i < localWorkers; i++) {
+                    processes.add(startLocalWorker(server, sharedToken));
+                }
+                if (port != 0) {
+                    System.err.println("Coordinator listening on " + server.getInetAddress().getHostAddress() + ":"
+                            + server.getLocalPort() + " (token handshake, unencrypted)");
+                }
+                run.awaitDone(processes);
+            } finally {
+                // Keep listening until local workers exit, so one that starts late is told DONE rather than refused
+                run.finish();
+                stopProcesses(processes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Coordinator failed: " + e.getMessage(), e);
+        } finally {
+            connections.shutdown();
+            try {
+                if (!connections.awaitTermination(EXIT_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    connections.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                connections.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        return run.summary(outDir);
+    }
+
+    /**
+     * Splits files into at most shardCount shards of roughly equal total size.
+     * Largest files are placed first, each into the currently smallest shard;
+     * each shard keeps its files in listing order. Empty shards are dropped and
+     * shards are ordered by their first file.
+     */
+    static List<List<Integer>> shard(long[] sizes, int shardCount) {
+        int count = Math.max(1, Math.min(shardCount, sizes.length));
+        List<Integer> bySize = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            bySize.add(i);
+        }
+        bySize.sort(Comparator.comparingLong((Integer i) -> sizes[i]).reversed());
+
+        List<List<Integer>> shards = new ArrayList<>();
+        long[] totals = new long[count];
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (int file : bySize) {
+            int smallest = 0;
+            for (int s = 1; s < count; s++) {
+                if (totals[s] < totals[smallest]) {
+                    smallest = s;
+                }
+            }
+            shards.get(smallest).add(file);
+            totals[smallest] += sizes[file];
+        }
+
+        List<List<Integer>> result = new ArrayList<>();
+        for (List<Integer> s : shards) {
+            if (!s.isEmpty()) {
+                s.sort(null);
+                result.add(s);
+            }
+        }
+        result.sort(Comparator.comparingInt((List<Integer> s) -> s.get(0)));
+        return result;
+    }
+
+    // The token goes through the environment rather than the command line, which other users can see
+    private static Process startLocalWorker(ServerSocket server, String token) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        InetAddress host = server.getInetAddress().isAnyLocalAddress()
+                ? InetAddress.getLoopbackAddress() : server.getInetAddress();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "TopSecret",
+                "--worker", host.getHostAddress(), String.valueOf(server.getLocalPort()))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put(TOKEN_ENV, token);
+        return builder.start();
+    }
+
+    static byte[] nonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    // HMAC-SHA256 keyed by the token over the role and both nonces; the role keeps the two proofs distinct
+    static byte[] proof(String token, String role, byte[] coordinatorNonce, byte[] workerNonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(token.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update(role.getBytes(StandardCharsets.UTF_8));
+            mac.update(coordinatorNonce);
+            return mac.doFinal(workerNonce);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void stopProcesses(List<Process> processes) {
+        long deadline = System.currentTimeMillis() + EXIT_GRACE_MILLIS;
+        for (Process p : processes) {
+            try {
+                if (!p.waitFor(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    p.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                p.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void accept(ServerSocket server, Run run, File out, String keyPath, String token,
+                               ExecutorService connections) {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket, run, out, keyPath, token));
+            } catch (IOException | RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Authenticates one connection, then hands it shards until the run is
+     * over; a broken connection returns its shard to the queue. Only
+     * connections that pass the handshake become workers.
+     */
+    private static void serve(Socket socket, Run run, File out, String keyPath, String token) {
+        int workerId = 0;
+        Shard shard = null;
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            if (!authenticate(socket, in, dos, token)) {
+                System.err.println("Coordinator rejected a connection from "
+                        + socket.getInetAddress().getHostAddress() + ": wrong token");
+                return;
+            }
+            workerId = run.register(socket);
+            dos.writeUTF(keyPath);
+            dos.flush();
+            while ((shard = run.next(workerId)) != null) {
+                dos.writeInt(shard.id);
+                dos.writeInt(shard.files.size());
+                for (int file : shard.files) {
+                    dos.writeUTF(run.names.get(file));
+                }
+                dos.flush();
+                if (in.readInt() != shard.id) {
+                    throw new IOException("worker " + workerId + " answered for the wrong shard");
+                }
+                receive(in, shard, workerId, run, out);
+                shard = null;
+            }
+            dos.writeInt(DONE);
+            dos.flush();
+        } catch (IOException e) {
+            // Worker went away; someone else will run its shard
+        } finally {
+            if (workerId != 0) {
+                run.disconnected(workerId, shard);
+            }
+        }
+    }
+
+    // Coordinator side of the handshake; a peer that stalls in it is dropped after HANDSHAKE_TIMEOUT_MILLIS
+    private static boolean authenticate(Socket socket, DataInputStream in, DataOutputStream dos, String token)
+            throws IOException {
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        byte[] coordinatorNonce = nonce();
+        dos.write(coordinatorNonce);
+        dos.flush();
+        byte[] workerNonce = new byte[NONCE_LENGTH];
+        byte[] proof = new byte[PROOF_LENGTH];
+        in.readFully(workerNonce);
+        in.readFully(proof);
+        if (!MessageDigest.isEqual(proof, proof(token, WORKER_ROLE, coordinatorNonce, workerNonce))) {
+            return false;
+        }
+        dos.write(proof(token, COORDINATOR_ROLE, coordinatorNonce, workerNonce));
+        socket.setSoTimeout(0);
+        return true;
+    }
+
+    /**
+     * Streams one shard's results into temp files, then moves them into place
+     * unless another copy won. The shard is claimed before the renames and
+     * only counted as done after them, so the run cannot finish with outputs
+     * missing; a failed rename fails the run.
+     */
+    private static void receive(DataInputStream in, Shard shard, int workerId, Run run, File out) throws IOException {
+        List<Path> temps = new ArrayList<>();
+        try {
+            long bytes = 0;
+            for (int file : shard.files) {
+                String name = run.names.get(file);
+                Path temp = new File(out, name + ".w" + workerId + TEMP_SUFFIX).toPath();
+                temps.add(temp);
+                try (OutputStream os = Files.newOutputStream(temp)) {
+                    int length;
+                    while ((length = in.readInt()) != END_OF_FILE) {
+                        if (length == FAILED) {
+                            run.fail(name + " on worker " + workerId + ": " + in.readUTF());
+                            throw new IOException("worker " + workerId + " failed");
+                        }
+                        if (length < 0) {
+                            throw new IOException("worker " + workerId + " sent a bad chunk length");
+                        }
+                        copy(in, os, length);
+                        bytes += length;
+                    }
+                }
+            }
+            long nanos = in.readLong();
+
+            if (run.claim(shard, workerId)) {
+                try {
+                    for (int i = 0; i < temps.size(); i++) {
+                        Path target = new File(out, run.names.get(shard.files.get(i))).toPath();
+                        Files.move(temps.get(i), target, StandardCopyOption.ATOMIC_MOVE,
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (IOException e) {
+                    run.fail("unable to write output for shard " + shard.id + ": " + e.getMessage());
+                    throw e;
+                }
+                temps.clear();
+                run.commit(shard, workerId, bytes, nanos);
+            }
+        } finally {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        int remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buf, 0, Math.min(buf.length, remaining));
+            if (n < 0) {
+                throw new IOException("connection closed mid-file");
+            }
+            out.write(buf, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private static final class Shard {
+        final int id;
+        final List<Integer> files;
+        final long bytes;
+        final Set<Integer> runners = new HashSet<>();
+        long startedNanos;
+        // Set once one copy's results are being moved into place, so later copies are discarded
+        boolean claimed;
+        boolean done;
+
+        Shard(int id, List<Integer> files, long bytes) {
+            this.id = id;
+            this.files = files;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class WorkerStats {
+        int shards;
+        int files;
+        long bytes;
+        long nanos;
+    }
+
+    // Shared state of one run; every method is called from connection threads and synchronizes on this
+    private static final class Run {
+        final List<String> names;
+        final long totalBytes;
+        final int shardCount;
+        final ArrayDeque<Shard> pending = new ArrayDeque<>();
+        final List<Shard> running = new ArrayList<>();
+        final Map<Integer, Socket> sockets = new TreeMap<>();
+        final Set<Integer> busy = new HashSet<>();
+        final Map<Integer, WorkerStats> stats = new TreeMap<>();
+        int completed;
+        int reissued;
+        int duplicates;
+        boolean over;
+        String failure;
+
+        Run(List<String> names, long[] sizes, List<List<Integer>> partition) {
+            this.names = names;
+            long total = 0;
+            for (int s = 0; s < partition.size(); s++) {
+                long bytes = 0;
+                for (int file : partition.get(s)) {
+                    bytes += sizes[file];
+                }
+                pending.add(new Shard(s, partition.get(s), bytes));
+                total += bytes;
+            }
+            this.totalBytes = total;
+            this.shardCount = partition.size();
+            this.over = shardCount == 0;
+        }
+
+        // Numbers workers from 1 in the order they pass the handshake
+        synchronized int register(Socket socket) {
+            int workerId = stats.size() + 1;
+            sockets.put(workerId, socket);
+            stats.put(workerId, new WorkerStats());
+            return workerId;
+        }
+
+        /**
+         * Next shard for a worker, blocking while others finish. Queued shards
+         * come first; after that the worker gets a second copy of the oldest
+         * shard still running on one other worker. Returns null when the run is over.
+         */
+        synchronized Shard next(int workerId) throws IOException {
+            while (!over) {
+                Shard shard = pending.poll();
+                if (shard == null) {
+                    for (Shard s : running) {
+                        if (s.runners.size() == 1 && !s.claimed && !s.runners.contains(workerId)
+                                && (shard == null || s.startedNanos < shard.startedNanos)) {
+                            shard = s;
+                        }
+                    }
+                    if (shard != null) {
+                        reissued++;
+                    }
+                }
+                if (shard != null) {
+                    if (shard.runners.isEmpty()) {
+                        shard.startedNanos = System.nanoTime();
+                        running.add(shard);
+                    }
+                    shard.runners.add(workerId);
+                    busy.add(workerId);
+                    return shard;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted", e);
+                }
+            }
+            return null;
+        }
+
+        // Lets one copy of a finished shard write its outputs; false if another copy already has
+        synchronized boolean claim(Shard shard, int workerId) {
+            if (shard.claimed || over) {
+                shard.runners.remove(workerId);
+                busy.remove(workerId);
+                duplicates++;
+                return false;
+            }
+            shard.claimed = true;
+            return true;
+        }
+
+        // Records a claimed shard whose outputs are all in place; the run is over after the last one
+        synchronized void commit(Shard shard, int workerId, long bytes, long nanos) {
+            shard.runners.remove(workerId);
+            busy.remove(workerId);
+            shard.done = true;
+            running.remove(shard);
+            WorkerStats s = stats.get(workerId);
+            s.shards++;
+            s.files += shard.files.size();
+            s.bytes += bytes;
+            s.nanos += nanos;
+            if (++completed == shardCount) {
+                over = true;
+            }
+            notifyAll();
+        }
+
+        synchronized void disconnected(int workerId, Shard shard) {
+            sockets.remove(workerId);
+            busy.remove(workerId);
+            if (shard != null && shard.runners.remove(workerId) && !shard.claimed && shard.runners.isEmpty()) {
+                running.remove(shard);
+                pending.addFirst(shard);
+            }
+            notifyAll();
+        }
+
+        synchronized void fail(String message) {
+            if (failure == null) {
+                failure = message;
+            }
+            over = true;
+            notifyAll();
+        }
+
+        // Waits for the last shard; fails if every local worker has exited with work still left
+        synchronized void awaitDone(List<Process> processes) {
+            while (!over) {
+                try {
+                    wait(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Coordinator interrupted", e);
+                }
+                if (!over && sockets.isEmpty() && !processes.isEmpty()
+                        && processes.stream().noneMatch(Process::isAlive)) {
+                    fail("all local workers exited before finishing");
+                }
+            }
+            if (failure != null) {
+                throw new RuntimeException("Coordinated run failed (" + failure + ")");
+            }
+        }
+
+        // Ends the run; idle workers are sent DONE, connections still running a discarded copy are closed
+        synchronized void finish() {
+            over = true;
+            for (int workerId : busy) {
+                try {
+                    sockets.get(workerId).close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+            notifyAll();
+        }
+
+        synchronized String summary(String outDir) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Deciphered ").append(names.size()).append(" files (").append(totalBytes)
+                    .append(" bytes) into ").append(outDir).append(" in ").append(shardCount).append(" shards on ")
+                    .append(stats.size()).append(" workers (").append(reissued).append(" reissued, ")
+                    .append(duplicates).append(" duplicate results discarded)");
+            for (Map.Entry<Integer, WorkerStats> e : stats.entrySet()) {
+                WorkerStats s = e.getValue();
+                sb.append("\n  worker ").append(e.getKey()).append(": ").append(s.shards).append(" shards, ")
+                        .append(s.files).append(" files, ").append(s.bytes).append(" bytes, ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(s.nanos)).append(" ms");
+            }
+            return sb.toString();
+        }
+    }
+}
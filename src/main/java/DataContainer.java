@@ -0,0 +1,195 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Single-file container holding every file of data/, read through one memory mapping.
+ *
+ * Layout (big-endian):
+ *   "TSPK" magic, int version, int entry count
+ *   per entry, sorted by name: short name length, UTF-8 name, long offset, long length, int CRC32C
+ *   file bytes, back to back
+ *
+ * Entries are sorted the same way as FileHandler.listDataFiles(), so file
+ * numbers are identical to the loose directory.
+ */
+public class DataContainer {
+    static final String DEFAULT_PATH = "data.pack";
+    private static final int MAGIC = 0x5453504B; // "TSPK"
+    private static final int VERSION = 1;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final String path;
+    private final MappedByteBuffer mapping;
+    private final String[] names;
+    private final long[] offsets;
+    private final long[] lengths;
+    private final int[] checksums;
+
+    private DataContainer(String path, MappedByteBuffer mapping, String[] names,
+                          long[] offsets, long[] lengths, int[] checksums) {
+        this.path = path;
+        this.mapping = mapping;
+        this.names = names;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.checksums = checksums;
+    }
+
+    // Maps a container file and parses its index
+    public static DataContainer open(String path) {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("Container too large to map: " + path);
+            }
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(path, mapping);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open container: " + path, e);
+        }
+    }
+
+    private static DataContainer parse(String path, MappedByteBuffer mapping) {
+        ByteBuffer header = mapping.duplicate();
+        try {
+            if (header.getInt() != MAGIC) {
+                throw new RuntimeException("Not a data container: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new RuntimeException("Unsupported container version " + version + ": " + path);
+            }
+            int count = header.getInt();
+            if (count < 0) {
+                throw new RuntimeException("Corrupt container index: " + path);
+            }
+            String[] names = new String[count];
+            long[] offsets = new long[count];
+            long[] lengths = new long[count];
+            int[] checksums = new int[count];
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[Short.toUnsignedInt(header.getShort())];
+                header.get(name);
+                names[i] = new String(name, StandardCharsets.UTF_8);
+                offsets[i] = header.getLong();
+                lengths[i] = header.getLong();
+                checksums[i] = header.getInt();
+                if (offsets[i] < header.position() || lengths[i] < 0
+                        || offsets[i] + lengths[i] > mapping.capacity()
+                        || (i > 0 && names[i - 1].compareTo(names[i]) >= 0)) {
+                    throw new RuntimeException("Corrupt container index: " + path);
+                }
+            }
+            return new DataContainer(path, mapping, names, offsets, lengths, checksums);
+        } catch (BufferUnderflowException e) {
+            throw new RuntimeException("Truncated container index: " + path, e);
+        }
+    }
+
+    // Sorted entry names, in the same order as the loose directory listing
+    public List<String> names() {
+        return List.of(names);
+    }
+
+    // Stored length of an entry in bytes, without reading or verifying it
+    public long length(String name) {
+        int i = Arrays.binarySearch(names, name);
+        if (i < 0) {
+            throw new RuntimeException("File not found: " + name);
+        }
+        return lengths[i];
+    }
+
+    /**
+     * Returns a read-only slice of the mapping holding the file's bytes.
+     * Throws RuntimeException if the name is missing or its checksum does not match.
+     */
+    public ByteBuffer read(String name) {
+        int i = Arrays.binarySearch(names, name);
+        if (i < 0) {
+            throw new RuntimeException("File not found: " + name);
+        }
+        ByteBuffer slice = mapping.slice((int) offsets[i], (int) lengths[i]).asReadOnlyBuffer();
+        CRC32C crc = new CRC32C();
+        crc.update(slice.duplicate());
+        if ((int) crc.getValue() != checksums[i]) {
+            throw new RuntimeException("Container entry is corrupt: " + name + " in " + path);
+        }
+        return slice;
+    }
+
+    /**
+     * Packs the given files of dataDir into a container at outPath.
+     * The container is written to a temp file and moved into place, so readers
+     * never see a half-written container. Returns the container size in bytes.
+     */
+    public static long pack(File dataDir, List<String> sortedNames, String outPath) {
+        byte[][] encodedNames = new byte[sortedNames.size()][];
+        long headerSize = 12;
+        for (int i = 0; i < encodedNames.length; i++) {
+            encodedNames[i] = sortedNames.get(i).getBytes(StandardCharsets.UTF_8);
+            if (encodedNames[i].length > 0xFFFF) {
+                throw new RuntimeException("File name too long to pack: " + sortedNames.get(i));
+            }
+            headerSize += 2 + encodedNames[i].length + 8 + 8 + 4;
+        }
+
+        Path out = Path.of(outPath).toAbsolutePath();
+        Path temp = out.resolveSibling(out.getFileName() + ".tmp");
+        ByteBuffer header = ByteBuffer.allocate((int) headerSize);
+        header.putInt(MAGIC).putInt(VERSION).putInt(encodedNames.length);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            long offset = headerSize;
+            channel.position(offset);
+            for (int i = 0; i < encodedNames.length; i++) {
+                CRC32C crc = new CRC32C();
+                long length = 0;
+                try (FileChannel in = FileChannel.open(new File(dataDir, sortedNames.get(i)).toPath())) {
+                    while (in.read(buf.clear()) > 0) {
+                        buf.flip();
+                        crc.update(buf.duplicate());
+                        length += buf.remaining();
+                        while (buf.hasRemaining()) {
+                            channel.write(buf);
+                        }
+                    }
+                }
+                header.putShort((short) encodedNames[i].length).put(encodedNames[i])
+                        .putLong(offset).putLong(length).putInt((int) crc.getValue());
+                offset += length;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new RuntimeException("Data too large for a single container mapping: " + offset + " bytes");
+            }
+            header.flip();
+            long headerPosition = 0;
+            while (header.hasRemaining()) {
+                headerPosition += channel.write(header, headerPosition);
+            }
+            channel.force(true);
+            Files.move(temp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return offset;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write container: " + outPath, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // best effort cleanup of a failed pack
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A strategy for running a decipher table over a string. Every engine gives
+ * the same result as SCALAR for every input; they differ only in speed, which
+ * depends on input size, the key's alphabet and the number of cores.
+ * EngineSelector picks one per call; Cipher.decipher(String, DecipherEngine)
+ * runs a specific one.
+ */
+public interface DecipherEngine {
+    // Characters used by a key, which decides how large its table is and which engines apply
+    enum Alphabet {
+        // Every key character is below 128: the table fits in 128 entries
+        ASCII,
+        // Key characters outside ASCII but no surrogates
+        BMP,
+        // The key contains surrogate code units, i.e. characters outside the BMP; the table spans the surrogate range
+        SUPPLEMENTARY
+    }
+
+    // Per-char table lookup with no setup; best for short inputs
+    DecipherEngine SCALAR = new Scalar();
+    // Latin-1 bytes through a 256-entry byte table; applies to ASCII keys only
+    DecipherEngine BYTE_TABLE = new ByteTable();
+    // Scalar lookup over chunks on a dedicated pool of decipher threads; for very large inputs
+    DecipherEngine PARALLEL = new ParallelChunks();
+
+    // Short name for reports, e.g. "byte-table"
+    String name();
+
+    // True if this engine can run tables of keys with this alphabet
+    boolean supports(Alphabet alphabet);
+
+    /**
+     * Returns text with every char c below table.length replaced by table[c].
+     * Chars at or past table.length are unchanged.
+     */
+    String decipher(String text, char[] table);
+
+    final class Scalar implements DecipherEngine {
+        private Scalar() {
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public boolean supports(Alphabet alphabet) {
+            return true;
+        }
+
+        @Override
+        public String decipher(String text, char[] table) {
+            char[] chars = new char[text.length()];
+            text.getChars(0, chars.length, chars, 0);
+            translate(chars, 0, chars.length, table);
+            return new String(chars);
+        }
+
+        static void translate(char[] chars, int from, int to, char[] table) {
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c < table.length) {
+                    chars[i] = table[c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Works on the string as Latin-1 bytes, which for the usual compact string
+     * is a plain array copy each way, and half the memory traffic of chars.
+     * getBytes turns chars above 0xFF into '?', so a '?' byte that was not a
+     * '?' char sends the whole input to SCALAR instead.
+     */
+    final class ByteTable implements DecipherEngine {
+        private ByteTable() {
+        }
+
+        @Override
+        public String name() {
+            return "byte-table";
+        }
+
+        @Override
+        public boolean supports(Alphabet alphabet) {
+            return alphabet == Alphabet.ASCII;
+        }
+
+        @Override
+        public String decipher(String text, char[] table) {
+            if (table.length > 256) {
+                return SCALAR.decipher(text, table);
+            }
+            byte[] byteTable = new byte[256];
+            for (int b = 0; b < 256; b++) {
+                byteTable[b] = (byte) (b < table.length ? table[b] : b);
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+            for (int i = 0; i < bytes.length; i++) {
+                byte b = bytes[i];
+                if (b == '?' && text.charAt(i) != '?') {
+                    return SCALAR.decipher(text, table);
+                }
+                bytes[i] = byteTable[b & 0xFF];
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Splits the chars into one chunk per core (at least MIN_CHUNK each) and
+     * translates them in parallel: the calling thread takes the first chunk
+     * and the rest run on this engine's own pool of daemon threads, not the
+     * common fork/join pool, so a large decipher neither waits behind nor
+     * holds up unrelated parallel streams and CompletableFutures there.
+     */
+    final class ParallelChunks implements DecipherEngine {
+        static final int MIN_CHUNK = 64 * 1024;
+
+        private ParallelChunks() {
+        }
+
+        @Override
+        public String name() {
+            return "parallel";
+        }
+
+        @Override
+        public boolean supports(Alphabet alphabet) {
+            return true;
+        }
+
+        @Override
+        public String decipher(String text, char[] table) {
+            char[] chars = new char[text.length()];
+            text.getChars(0, chars.length, chars, 0);
+            int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), chars.length / MIN_CHUNK));
+            int chunkSize = (chars.length + chunks - 1) / Math.max(1, chunks);
+            List<Future<?>> tasks = new ArrayList<>(chunks - 1);
+            for (int i = 1; i < chunks; i++) {
+                int from = i * chunkSize;
+                tasks.add(Workers.POOL.submit(() ->
+                        Scalar.translate(chars, from, Math.min(chars.length, from + chunkSize), table)));
+            }
+            Scalar.translate(chars, 0, Math.min(chars.length, chunkSize), table);
+
+            // Every chunk must be written before chars is read, so an interrupt only delays until then
+            boolean interrupted = false;
+            for (Future<?> task : tasks) {
+                while (true) {
+                    try {
+                        task.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Parallel decipher failed", e.getCause());
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return new String(chars);
+        }
+
+        // Created on first use: one thread per core, idle threads exit after a minute
+        private static final class Workers {
+            static final ExecutorService POOL = create();
+
+            private static ExecutorService create() {
+                int threads = Runtime.getRuntime().availableProcessors();
+                AtomicInteger count = new AtomicInteger();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                        new LinkedBlockingQueue<>(), r -> {
+                            Thread t = new Thread(r, "decipher-parallel-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        });
+                pool.allowCoreThreadTimeOut(true);
+                return pool;
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe, non-blocking facade over FileHandler and Cipher for embedding
+ * in other Java services.
+ *
+ * All work runs on the supplied executor, so callers never block on file or
+ * key I/O. Without one, a shared pool of daemon I/O threads is used rather
+ * than the common fork/join pool, since reads block and would starve the
+ * parallel streams and CompletableFutures sharing that pool. Loaded keys and the data directory listing are cached and shared
+ * between callers; each cache entry is reused until the file it came from
+ * changes on disk.
+ */
+public class DecipherService {
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final FileHandler fh;
+    private final Executor executor;
+    private final int chunkSize;
+    private final ConcurrentHashMap<String, CachedKey> keyCache = new ConcurrentHashMap<>();
+    private volatile CachedListing listing;
+
+    public DecipherService() {
+        this(IoExecutor.INSTANCE);
+    }
+
+    public DecipherService(Executor executor) {
+        this(new FileHandler(), executor, DEFAULT_CHUNK_SIZE);
+    }
+
+    DecipherService(FileHandler fh, Executor executor, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.fh = fh;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    // Formatted file list, same output as ProgramController.listFiles()
+    public CompletableFuture<String> listFiles() {
+        return CompletableFuture.supplyAsync(() -> ProgramController.formatFileList(dataFiles()), executor);
+    }
+
+    public CompletableFuture<String> getFileContents(String fileNumber) {
+        return getFileContents(fileNumber, ProgramController.DEFAULT_KEY_PATH);
+    }
+
+    // Reads and deciphers one file; failures complete the future exceptionally
+    public CompletableFuture<String> getFileContents(String fileNumber, String keyPath) {
+        return CompletableFuture.supplyAsync(() -> decipherFile(fileNumber, keyPath), executor);
+    }
+
+    public Flow.Publisher<CharBuffer> streamFileContents(String fileNumber) {
+        return streamFileContents(fileNumber, ProgramController.DEFAULT_KEY_PATH);
+    }
+
+    /**
+     * Publishes the deciphered file as read-only chunks of at most the
+     * configured chunk size. Nothing is read until the subscriber requests
+     * data, and each chunk is read from the file only when there is demand
+     * for it, so memory use does not grow with file size. The concatenated
+     * chunks equal getFileContents.
+     */
+    public Flow.Publisher<CharBuffer> streamFileContents(String fileNumber, String keyPath) {
+        return subscriber -> {
+            ChunkSubscription subscription = new ChunkSubscription(subscriber, fileNumber, keyPath);
+            subscriber.onSubscribe(subscription);
+        };
+    }
+
+    private String decipherFile(String fileNumber, String keyPath) {
+        int index = ProgramController.parseFileNumberToIndex(fileNumber);
+        List<String> files = dataFiles();
+        if (index < 0 || index >= files.size()) {
+            throw new RuntimeException("File number out of range: " + fileNumber);
+        }
+        String raw = fh.readDataFile(files.get(index));
+        return cipherFor(keyPath).decipher(raw);
+    }
+
+    // Returns the cached listing unless the data directory has been modified since
+    List<String> dataFiles() {
+        long modified = new File(FileHandler.DATA_DIR).lastModified();
+        CachedListing cached = listing;
+        if (cached != null && cached.modified == modified) {
+            return cached.files;
+        }
+        List<String> files = List.copyOf(fh.listDataFiles());
+        listing = new CachedListing(modified, files);
+        return files;
+    }
+
+    // Returns the shared Cipher for a key file, reloading it if the file has changed
+    Cipher cipherFor(String keyPath) {
+        long modified = new File(keyPath).lastModified();
+        CachedKey cached = keyCache.compute(keyPath, (path, current) -> {
+            if (current != null && current.modified == modified) {
+                return current;
+            }
+            return new CachedKey(modified, ProgramController.loadCipher(path));
+        });
+        return cached.cipher;
+    }
+
+    // Default executor, created on first use: one thread per core (at least 4), idle threads exit after a minute
+    private static final class IoExecutor {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "decipher-io-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    private static final class CachedKey {
+        final long modified;
+        final Cipher cipher;
+
+        CachedKey(long modified, Cipher cipher) {
+            this.modified = modified;
+            this.cipher = cipher;
+        }
+    }
+
+    private static final class CachedListing {
+        final long modified;
+        final List<String> files;
+
+        CachedListing(long modified, List<String> files) {
+            this.modified = modified;
+            this.files = files;
+        }
+    }
+
+    // Emits chunks on the executor, never more than requested and never concurrently
+    private final class ChunkSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super CharBuffer> subscriber;
+        private final String fileNumber;
+        private final String keyPath;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        // Set by an invalid request; delivered by drainLoop so onError never overlaps onNext
+        private volatile Throwable requestError;
+
+        // Only touched inside drainLoop, which the wip counter serialises
+        private DecipheredChunks chunks;
+        private boolean done;
+
+        ChunkSubscription(Flow.Subscriber<? super CharBuffer> subscriber, String fileNumber, String keyPath) {
+            this.subscriber = subscriber;
+            this.fileNumber = fileNumber;
+            this.keyPath = keyPath;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (requestError == null) {
+                    requestError = new IllegalArgumentException("Requested chunk count must be positive: " + n);
+                }
+                drain();
+                return;
+            }
+            demand.getAndAccumulate(n, (current, add) -> {
+                long sum = current + add;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            });
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            // Lets drainLoop close the file
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drainLoop);
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            while (true) {
+                if (!done) {
+                    if (cancelled) {
+                        finish();
+                    } else if (requestError != null) {
+                        finish();
+                        subscriber.onError(requestError);
+                    } else {
+                        emit();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // Reads and emits one chunk per unit of demand
+        private void emit() {
+            long requested = demand.get();
+            long emitted = 0;
+            while (emitted < requested && !cancelled && requestError == null) {
+                CharBuffer chunk;
+                try {
+                    if (chunks == null) {
+                        chunks = openChunks();
+                    }
+                    chunk = chunks.next();
+                } catch (IOException | RuntimeException e) {
+                    finish();
+                    subscriber.onError(e);
+                    return;
+                }
+                if (chunk != null) {
+                    subscriber.onNext(chunk);
+                    emitted++;
+                }
+                if (chunk == null || chunks.exhausted()) {
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+            if (requested != Long.MAX_VALUE) {
+                demand.addAndGet(-emitted);
+            }
+        }
+
+        private DecipheredChunks openChunks() {
+            int index = ProgramController.parseFileNumberToIndex(fileNumber);
+            List<String> files = dataFiles();
+            if (index < 0 || index >= files.size()) {
+                throw new RuntimeException("File number out of range: " + fileNumber);
+            }
+            char[] table = cipherFor(keyPath).decipherTable();
+            return new DecipheredChunks(fh.openDataChannel(files.get(index)), table, chunkSize);
+        }
+
+        // Ends the stream and closes the file, if one was opened
+        private void finish() {
+            done = true;
+            if (chunks != null) {
+                chunks.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a data file one chunk at a time, giving the same text as
+     * readDataFile deciphered: decoded with the platform charset (malformed
+     * input replaced), every line ending turned into \n and a last line
+     * without one ended, then translated in place with Cipher.translate.
+     * Each chunk is a fresh read-only buffer holding only its own chars, so a
+     * subscriber may keep it after later chunks are read.
+     */
+    private static final class DecipheredChunks {
+        // Large enough to hold any complete character, so decoding always makes progress
+        private static final int MIN_READ_SIZE = 16;
+
+        private final ReadableByteChannel channel;
+        private final char[] table;
+        private final int chunkSize;
+        private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes;
+        private boolean endOfInput;
+        private boolean flushing;
+        private boolean decoded;
+        private boolean exhausted;
+        // Line handling state carried across chunks
+        private boolean afterCarriageReturn;
+        private boolean lineOpen;
+
+        DecipheredChunks(ReadableByteChannel channel, char[] table, int chunkSize) {
+            this.channel = channel;
+            this.table = table;
+            this.chunkSize = chunkSize;
+            this.bytes = ByteBuffer.allocate(Math.max(MIN_READ_SIZE, chunkSize)).flip();
+        }
+
+        // The next chunk of at most chunkSize chars, or null once the file is done
+        CharBuffer next() throws IOException {
+            if (exhausted) {
+                return null;
+            }
+            CharBuffer chunk = CharBuffer.allocate(chunkSize);
+            while (chunk.hasRemaining() && !decoded) {
+                int fresh = chunk.position();
+                CoderResult result = flushing ? decoder.flush(chunk) : decoder.decode(bytes, chunk, endOfInput);
+                normalizeLines(chunk, fresh);
+                if (result.isUnderflow()) {
+                    if (flushing) {
+                        decoded = true;
+                    } else if (endOfInput) {
+                        flushing = true;
+                    } else {
+                        bytes.compact();
+                        endOfInput = channel.read(bytes) < 0;
+                        bytes.flip();
+                    }
+                }
+            }
+            if (decoded && chunk.hasRemaining()) {
+                if (lineOpen) {
+                    chunk.put('\n');
+                }
+                exhausted = true;
+            }
+            if (chunk.position() == 0) {
+                return null;
+            }
+            int length = chunk.position();
+            Cipher.translate(chunk, 0, length, table);
+            return chunk.flip().slice().asReadOnlyBuffer();
+        }
+
+        // True once the last chunk has been returned
+        boolean exhausted() {
+            return exhausted;
+        }
+
+        // Rewrites the chars from 'from' with Scanner's line endings (\r\n, \r, \u2028, \u2029, \u0085) as \n
+        private void normalizeLines(CharBuffer chunk, int from) {
+            int to = chunk.position();
+            int written = from;
+            for (int i = from; i < to; i++) {
+                char c = chunk.get(i);
+                if (afterCarriageReturn) {
+                    afterCarriageReturn = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\r') {
+                    afterCarriageReturn = true;
+                    c = '\n';
+                } else if (c == '\u2028' || c == '\u2029' || c == '\u0085') {
+                    c = '\n';
+                }
+                chunk.put(written++, c);
+                lineOpen = c != '\n';
+            }
+            chunk.position(written);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing was written, so there is nothing to lose
+            }
+        }
+    }
+}
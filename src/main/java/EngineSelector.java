@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Chooses a DecipherEngine from input length, key alphabet and core count.
+ *
+ * BYTE_TABLE is used for ASCII keys from byteTableMin chars, PARALLEL from
+ * parallelMin chars (per alphabet, since wider keys have larger tables) when
+ * there is more than one core, and SCALAR otherwise. The thresholds start at
+ * built-in defaults; calibrate() times the engines on this machine, and
+ * saves the crossover points to .engine-calibration in the working directory.
+ * Later runs load them from there. The saved file is ignored if the core count
+ * or Java version has changed since it was written.
+ */
+public class EngineSelector {
+    static final String CACHE_PATH = ".engine-calibration";
+    static final int DEFAULT_BYTE_TABLE_MIN = 4 * 1024;
+    static final int DEFAULT_PARALLEL_MIN = 1024 * 1024;
+    // Input lengths timed by calibrate(); an engine that does not win at the largest is never chosen
+    private static final int[] CALIBRATION_SIZES = {1 << 10, 1 << 12, 1 << 14, 1 << 16, 1 << 18, 1 << 20, 1 << 22};
+    private static final int CALIBRATION_RUNS = 3;
+    private static final DecipherEngine.Alphabet[] ALPHABETS = DecipherEngine.Alphabet.values();
+
+    private static volatile EngineSelector current;
+
+    private final int cores;
+    private final int byteTableMin;
+    // Indexed by Alphabet ordinal
+    private final int[] parallelMin;
+    private final boolean calibrated;
+
+    EngineSelector(int cores, int byteTableMin, int[] parallelMin, boolean calibrated) {
+        this.cores = cores;
+        this.byteTableMin = byteTableMin;
+        this.parallelMin = parallelMin.clone();
+        this.calibrated = calibrated;
+    }
+
+    // Built-in thresholds for this machine's core count
+    static EngineSelector defaults() {
+        int[] parallel = new int[ALPHABETS.length];
+        Arrays.fill(parallel, DEFAULT_PARALLEL_MIN);
+        return new EngineSelector(Runtime.getRuntime().availableProcessors(), DEFAULT_BYTE_TABLE_MIN, parallel, false);
+    }
+
+    // Selector used by Cipher.decipher(String): the saved calibration if there is a current one, else defaults
+    public static EngineSelector current() {
+        EngineSelector selector = current;
+        if (selector == null) {
+            selector = load(Path.of(CACHE_PATH));
+            current = selector;
+        }
+        return selector;
+    }
+
+    public DecipherEngine select(int length, DecipherEngine.Alphabet alphabet) {
+        if (cores > 1 && length >= parallelMin[alphabet.ordinal()]) {
+            return DecipherEngine.PARALLEL;
+        }
+        if (DecipherEngine.BYTE_TABLE.supports(alphabet) && length >= byteTableMin) {
+            return DecipherEngine.BYTE_TABLE;
+        }
+        return DecipherEngine.SCALAR;
+    }
+
+    // One line explaining a choice, for --verbose
+    public String describe(int length, DecipherEngine.Alphabet alphabet) {
+        return select(length, alphabet).name() + " for " + length + " chars (" + alphabet + " key, " + cores
+                + (cores == 1 ? " core, " : " cores, ") + (calibrated ? "calibrated" : "default") + " thresholds)";
+    }
+
+    // The thresholds themselves, for the --calibrate report
+    public String thresholds() {
+        StringBuilder sb = new StringBuilder("byte-table from ").append(format(byteTableMin)).append(", parallel from");
+        for (DecipherEngine.Alphabet alphabet : ALPHABETS) {
+            sb.append(alphabet == ALPHABETS[0] ? " " : ", ").append(format(parallelMin[alphabet.ordinal()]))
+                    .append(" (").append(alphabet).append(")");
+        }
+        return sb.toString();
+    }
+
+    private static String format(int threshold) {
+        return threshold == Integer.MAX_VALUE ? "never" : threshold + " chars";
+    }
+
+    // Times the engines on this machine, saves the result to .engine-calibration and makes it current
+    public static EngineSelector calibrate() {
+        EngineSelector selector = calibrate(CALIBRATION_SIZES);
+        selector.save(Path.of(CACHE_PATH));
+        current = selector;
+        return selector;
+    }
+
+    /**
+     * For each alphabet, deciphers random text of each size with a synthetic
+     * key of that alphabet and records the smallest size from which the
+     * candidate engine beats SCALAR at every larger size too.
+     */
+    static EngineSelector calibrate(int[] sizes) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        Random random = new Random(42);
+        int byteTable = Integer.MAX_VALUE;
+        int[] parallel = new int[ALPHABETS.length];
+        for (DecipherEngine.Alphabet alphabet : ALPHABETS) {
+            char[] table = syntheticTable(alphabet);
+            boolean[] byteWins = new boolean[sizes.length];
+            boolean[] parallelWins = new boolean[sizes.length];
+            for (int s = 0; s < sizes.length; s++) {
+                String text = syntheticText(sizes[s], table.length, random);
+                long scalar = bestTime(DecipherEngine.SCALAR, text, table);
+                if (DecipherEngine.BYTE_TABLE.supports(alphabet)) {
+                    byteWins[s] = bestTime(DecipherEngine.BYTE_TABLE, text, table) < scalar;
+                }
+                if (cores > 1) {
+                    parallelWins[s] = bestTime(DecipherEngine.PARALLEL, text, table) < scalar;
+                }
+            }
+            if (DecipherEngine.BYTE_TABLE.supports(alphabet)) {
+                byteTable = crossover(sizes, byteWins);
+            }
+            parallel[alphabet.ordinal()] = crossover(sizes, parallelWins);
+        }
+        return new EngineSelector(cores, byteTable, parallel, true);
+    }
+
+    // Smallest size from which wins holds through the largest size, or MAX_VALUE if it does not hold at the end
+    static int crossover(int[] sizes, boolean[] wins) {
+        int threshold = Integer.MAX_VALUE;
+        for (int s = sizes.length - 1; s >= 0 && wins[s]; s--) {
+            threshold = sizes[s];
+        }
+        return threshold;
+    }
+
+    // A rotation over the key alphabet's range, so every lookup changes the char
+    private static char[] syntheticTable(DecipherEngine.Alphabet alphabet) {
+        int size;
+        switch (alphabet) {
+            case ASCII:
+                size = 128;
+                break;
+            case BMP:
+                size = 0x4000;
+                break;
+            default:
+                size = 0xE000;
+                break;
+        }
+        char[] table = new char[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = (char) ((i + 1) % size);
+        }
+        return table;
+    }
+
+    private static String syntheticText(int length, int range, Random random) {
+        char[] chars = new char[length];
+        int low = range > 128 ? 128 : 32;
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (low + random.nextInt(range - low));
+        }
+        return new String(chars);
+    }
+
+    // Fastest of a few runs after one warm-up, in nanoseconds
+    private static long bestTime(DecipherEngine engine, String text, char[] table) {
+        engine.decipher(text, table);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < CALIBRATION_RUNS; run++) {
+            long start = System.nanoTime();
+            engine.decipher(text, table);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // Reads saved thresholds; defaults if the file is missing, unreadable or from another machine setup
+    static EngineSelector load(Path cache) {
+        if (!Files.isRegularFile(cache)) {
+            return defaults();
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(cache, StandardCharsets.UTF_8)) {
+            props.load(reader);
+            int cores = Integer.parseInt(props.getProperty("cores"));
+            if (cores != Runtime.getRuntime().availableProcessors()
+                    || !System.getProperty("java.version").equals(props.getProperty("java.version"))) {
+                return defaults();
+            }
+            int[] parallel = new int[ALPHABETS.length];
+            for (DecipherEngine.Alphabet alphabet : ALPHABETS) {
+                parallel[alphabet.ordinal()] = Integer.parseInt(props.getProperty("parallelMin." + alphabet));
+            }
+            return new EngineSelector(cores, Integer.parseInt(props.getProperty("byteTableMin")), parallel, true);
+        } catch (IOException | RuntimeException e) {
+            return defaults();
+        }
+    }
+
+    // Writes the thresholds to a temp file and moves it over cache
+    void save(Path cache) {
+        Properties props = new Properties();
+        props.setProperty("cores", String.valueOf(cores));
+        props.setProperty("java.version", System.getProperty("java.version"));
+        props.setProperty("byteTableMin", String.valueOf(byteTableMin));
+        for (DecipherEngine.Alphabet alphabet : ALPHABETS) {
+            props.setProperty("parallelMin." + alphabet, String.valueOf(parallelMin[alphabet.ordinal()]));
+        }
+        Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                props.store(writer, "Decipher engine thresholds; delete to return to defaults");
+            }
+            Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to save engine calibration: " + cache, e);
+        }
+    }
+}
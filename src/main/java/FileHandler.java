@@ -1,16 +1,54 @@
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 
-// Handles all file access from data/ directory
+// Handles all file access from data/ directory, or from data.pack when data/ has been packed away
 public class FileHandler {
-    private static final String DATA_DIR = "data";
+    static final String DATA_DIR = "data";
+
+    // Reused per thread by translateFile; both report malformed input rather than replacing it
+    private static final ThreadLocal<CharsetDecoder> UTF8_DECODER =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newDecoder);
+    private static final ThreadLocal<CharsetEncoder> UTF8_ENCODER =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newEncoder);
+
+    // Non-null when files are served from a packed container instead of data/
+    private final DataContainer container;
+
+    // Uses data/ if it exists, otherwise data.pack if that exists
+    public FileHandler() {
+        this(!new File(DATA_DIR).isDirectory() && new File(DataContainer.DEFAULT_PATH).isFile()
+                ? DataContainer.open(DataContainer.DEFAULT_PATH) : null);
+    }
+
+    FileHandler(DataContainer container) {
+        this.container = container;
+    }
 
     // Returns sorted list of all files in data/ directory
     public List<String> listDataFiles() {
+        if (container != null) {
+            return new ArrayList<>(container.names());
+        }
+
         File dir = new File(DATA_DIR);
         if (!dir.exists() || !dir.isDirectory()) {
             throw new RuntimeException("Data directory not found: " + DATA_DIR);
@@ -34,29 +72,301 @@ public class FileHandler {
 
     // Reads file contents, validates filename to prevent path traversal
     public String readDataFile(String filename) {
-        if (filename == null || filename.trim().isEmpty()) {
-            throw new IllegalArgumentException("Filename cannot be empty.");
-        }
-
-        // Prevent path traversal attacks
-        if (filename.contains("/") || filename.contains("\\") || filename.contains("..")) {
-            throw new IllegalArgumentException("Invalid filename: " + filename);
-        }
+        return readDataFile(filename, null);
+    }
 
-        File chosenFile = new File(DATA_DIR + File.separator + filename);
-        if (!chosenFile.exists() || !chosenFile.isFile()) {
-            throw new RuntimeException("File not found: " + filename);
+    // Reads file contents, feeding the raw bytes to the check (if any) in the same pass
+    public String readDataFile(String filename, IntegrityCheck check) {
+        if (container != null) {
+            return readContainerEntry(filename, check);
         }
+        File chosenFile = resolveDataFile(filename);
 
         StringBuilder sb = new StringBuilder();
-        try (Scanner fileReader = new Scanner(chosenFile)) {
+        try (InputStream in = openDataStream(chosenFile, check);
+             Scanner fileReader = new Scanner(in)) {
             while (fileReader.hasNextLine()) {
                 sb.append(fileReader.nextLine()).append("\n");
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             throw new RuntimeException("Unable to open file: " + filename, e);
         }
 
         return sb.toString();
     }
+
+    // Serves a packed file as a slice of the container mapping, with the same line handling as Scanner
+    private String readContainerEntry(String filename, IntegrityCheck check) {
+        validateFilename(filename);
+        ByteBuffer bytes = container.read(filename);
+        if (check != null) {
+            check.update(bytes.duplicate());
+        }
+        CharSequence text = Charset.defaultCharset().decode(bytes);
+
+        StringBuilder sb = new StringBuilder(text.length() + 1);
+        int lineStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085') {
+                sb.append(text, lineStart, i).append("\n");
+                i += (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') ? 2 : 1;
+                lineStart = i;
+            } else {
+                i++;
+            }
+        }
+        if (lineStart < text.length()) {
+            sb.append(text, lineStart, text.length()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Pre-scan: true if the file contains any byte in the 256-bit set
+     * (4 longs, bit b set for byte value b). Reads through a memory mapping
+     * and stops at the first match.
+     */
+    boolean containsAnyByte(String filename, long[] byteSet) {
+        File file = resolveDataFile(filename);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(Integer.MAX_VALUE, size - pos));
+                while (bytes.hasRemaining()) {
+                    int b = bytes.get() & 0xFF;
+                    if ((byteSet[b >>> 6] & (1L << b)) != 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open file: " + filename, e);
+        }
+    }
+
+    // Size of a data file in bytes, from the directory entry or the container index
+    long dataFileSize(String filename) {
+        if (container != null) {
+            validateFilename(filename);
+            return container.length(filename);
+        }
+        return resolveDataFile(filename).length();
+    }
+
+    // Raw bytes of a data file as a channel: the file itself, or its container slice when packed
+    ReadableByteChannel openDataChannel(String filename) {
+        if (container != null) {
+            validateFilename(filename);
+            ByteBuffer slice = container.read(filename);
+            return new ReadableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) {
+                    if (!slice.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(dst.remaining(), slice.remaining());
+                    dst.put(slice.slice().limit(n));
+                    slice.position(slice.position() + n);
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+        File file = resolveDataFile(filename);
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open file: " + filename, e);
+        }
+    }
+
+    // Feeds every byte of a file to check through a memory mapping
+    static void checksumFile(File file, IntegrityCheck check) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+                check.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(Integer.MAX_VALUE, size - pos)));
+            }
+        }
+    }
+
+    /**
+     * Copies a data file's raw bytes to target with FileChannel.transferTo, so
+     * the contents never enter the Java heap. Returns the last byte written,
+     * or -1 for an empty file.
+     */
+    int transferDataFile(String filename, WritableByteChannel target) {
+        File file = resolveDataFile(filename);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = 0;
+            while (pos < size) {
+                pos += channel.transferTo(pos, size - pos, target);
+            }
+            if (size == 0) {
+                return -1;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            return last.get(0) & 0xFF;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to copy file: " + filename, e);
+        }
+    }
+
+    /**
+     * Streams source through a translation table into target as UTF-8, then
+     * syncs target to disk so it can safely be renamed over another file.
+     * Bytes are read into and written from pooled direct buffers and the
+     * chars are translated in place, so per-file allocation does not grow
+     * with file size. Malformed input fails instead of being silently replaced.
+     */
+    static void translateFile(File source, File target, char[] table) throws IOException {
+        translateFile(source, target, table, null);
+    }
+
+    // Same as translateFile, also feeding the source bytes to check (if any) in the same pass
+    static void translateFile(File source, File target, char[] table, IntegrityCheck check) throws IOException {
+        translateFile(source, target, table, check, new IntegrityCheck[0]);
+    }
+
+    // Same again, also feeding the bytes written to target to each of outputChecks
+    static void translateFile(File source, File target, char[] table, IntegrityCheck check,
+                              IntegrityCheck[] outputChecks) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            translate(in, out, table, check, outputChecks);
+            out.force(true);
+        }
+    }
+
+    /**
+     * The streaming loop behind translateFile, between any two channels; used
+     * directly by Worker to send a file to the coordinator without a temp file.
+     * Neither channel is closed.
+     */
+    static void translate(ReadableByteChannel in, WritableByteChannel out, char[] table, IntegrityCheck check,
+                          IntegrityCheck[] outputChecks) throws IOException {
+        CharsetDecoder decoder = UTF8_DECODER.get().reset();
+        CharsetEncoder encoder = UTF8_ENCODER.get().reset();
+        try (BufferPool.Slab inSlab = BufferPool.shared().acquire(Cipher.TRANSLATE_BUFFER_SIZE);
+             BufferPool.Slab outSlab = BufferPool.shared().acquire(Cipher.TRANSLATE_BUFFER_SIZE)) {
+            ByteBuffer inBytes = inSlab.bytes();
+            CharBuffer chars = inSlab.chars();
+            ByteBuffer outBytes = outSlab.bytes();
+
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                int readStart = inBytes.position();
+                endOfInput = in.read(inBytes) < 0;
+                if (check != null) {
+                    check.update(inBytes.duplicate().flip().position(readStart));
+                }
+                inBytes.flip();
+                CoderResult decoded;
+                do {
+                    // Anything already in chars is a split surrogate that was translated last round
+                    int fresh = chars.position();
+                    decoded = decoder.decode(inBytes, chars, endOfInput);
+                    if (decoded.isUnderflow() && endOfInput) {
+                        decoded = decoder.flush(chars);
+                    }
+                    if (decoded.isError()) {
+                        decoded.throwException();
+                    }
+                    Cipher.translate(chars, fresh, chars.position(), table);
+                    chars.flip();
+                    encode(encoder, chars, outBytes, out, false, outputChecks);
+                    chars.compact();
+                } while (decoded.isOverflow());
+                inBytes.compact();
+            }
+
+            chars.flip();
+            encode(encoder, chars, outBytes, out, true, outputChecks);
+            while (encoder.flush(outBytes).isOverflow()) {
+                writeFully(outBytes, out, outputChecks);
+            }
+            writeFully(outBytes, out, outputChecks);
+        }
+    }
+
+    // Encodes as much of chars as the encoder accepts, writing outBytes to out whenever it fills
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer outBytes,
+                               WritableByteChannel out, boolean endOfInput, IntegrityCheck[] outputChecks)
+            throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, outBytes, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isUnderflow()) {
+                return;
+            }
+            writeFully(outBytes, out, outputChecks);
+        }
+    }
+
+    // Writes everything buffered in bytes (write mode) to out and the checks, and clears it
+    private static void writeFully(ByteBuffer bytes, WritableByteChannel out, IntegrityCheck[] outputChecks)
+            throws IOException {
+        bytes.flip();
+        for (IntegrityCheck outputCheck : outputChecks) {
+            outputCheck.update(bytes.duplicate());
+        }
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    // True when files are served from a packed container rather than data/
+    boolean isPacked() {
+        return container != null;
+    }
+
+    private InputStream openDataStream(File file, IntegrityCheck check) throws FileNotFoundException {
+        InputStream in = new FileInputStream(file);
+        return check == null ? in : check.wrap(in);
+    }
+
+    // Validates filename and returns the existing file under data/
+    File resolveDataFile(String filename) {
+        validateFilename(filename);
+
+        File chosenFile = new File(DATA_DIR + File.separator + filename);
+        if (!chosenFile.exists() || !chosenFile.isFile()) {
+            throw new RuntimeException("File not found: " + filename);
+        }
+        return chosenFile;
+    }
+
+    private void validateFilename(String filename) {
+        if (filename == null || filename.trim().isEmpty()) {
+            throw new IllegalArgumentException("Filename cannot be empty.");
+        }
+
+        // Prevent path traversal attacks
+        if (filename.contains("/") || filename.contains("\\") || filename.contains("..")) {
+            throw new IllegalArgumentException("Invalid filename: " + filename);
+        }
+    }
+
+    // Packs every file of data/ into one container; returns its size in bytes
+    public long packDataFiles(String containerPath) {
+        return DataContainer.pack(new File(DATA_DIR), listDataFiles(), containerPath);
+    }
 }
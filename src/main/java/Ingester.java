@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Enciphers a directory of plaintext files into data/.
+ *
+ * Files are processed by a pool of workers. Each one is streamed through the
+ * key's encipher table into a synced temp file under .ingest/ and then
+ * atomically renamed into data/. Readers never see a partly written file,
+ * and an existing data file with the same name is replaced.
+ */
+public class Ingester {
+    static final String WORK_DIR = ".ingest";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final FileHandler fh;
+    private final int threads;
+
+    public Ingester(FileHandler fh) {
+        this(fh, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Ingester(FileHandler fh, int threads) {
+        this.fh = fh;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Enciphers every regular file in sourceDir (not subdirectories) and returns a summary line.
+     * Throws RuntimeException if data/ is packed, the key cannot round-trip or any file fails.
+     */
+    public String ingest(String sourceDir, String keyPath) {
+        if (fh.isPacked()) {
+            // Creating data/ would hide every file in the container from later runs
+            throw new RuntimeException("Ingest needs the loose " + FileHandler.DATA_DIR + " directory, not a container");
+        }
+        Cipher cipher = ProgramController.loadCipher(keyPath);
+        if (!cipher.isRoundTrip()) {
+            throw new RuntimeException("Cipher key cannot be used for ingest: both lines must use the same "
+                    + "characters, or enciphered files would not decipher back to the original: " + keyPath);
+        }
+        char[] table = cipher.encipherTable();
+
+        File[] entries = new File(sourceDir).listFiles();
+        if (entries == null) {
+            throw new RuntimeException("Source directory not found: " + sourceDir);
+        }
+        List<File> sources = new ArrayList<>();
+        for (File f : entries) {
+            if (f.isFile()) {
+                sources.add(f);
+            }
+        }
+
+        File dataDir = new File(FileHandler.DATA_DIR);
+        File workDir = new File(WORK_DIR);
+        if ((!dataDir.isDirectory() && !dataDir.mkdirs()) || (!workDir.isDirectory() && !workDir.mkdirs())) {
+            throw new RuntimeException("Unable to create " + FileHandler.DATA_DIR + " or " + WORK_DIR);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, sources.size())));
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (File source : sources) {
+                tasks.add(pool.submit(() -> {
+                    ingestFile(source, dataDir, workDir, table);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ingest interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new RuntimeException("Ingest failed (" + cause.getMessage() + ")", cause);
+        } finally {
+            // Temp files must be finished or removed before the work directory can go
+            ProgramController.drainPool(pool, tasks);
+            workDir.delete();
+        }
+        return "Ingested " + sources.size() + " files into " + FileHandler.DATA_DIR;
+    }
+
+    private static void ingestFile(File source, File dataDir, File workDir, char[] table) throws IOException {
+        File temp = new File(workDir, source.getName() + TEMP_SUFFIX);
+        try {
+            FileHandler.translateFile(source, temp, table);
+            Files.move(temp.toPath(), new File(dataDir, source.getName()).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IOException(source.getName() + ": " + e.getMessage(), e);
+        }
+    }
+}
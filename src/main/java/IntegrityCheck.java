@@ -0,0 +1,215 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Checksum of a data file computed while FileHandler reads it, so verifying costs no extra pass
+public class IntegrityCheck {
+
+    // Supported algorithms and the sidecar manifest each one is read from
+    public enum Algorithm {
+        SHA_256("SHA-256", "data.sha256"),
+        CRC32C("CRC32C", "data.crc32c");
+
+        private final String displayName;
+        private final String manifestPath;
+
+        Algorithm(String displayName, String manifestPath) {
+            this.displayName = displayName;
+            this.manifestPath = manifestPath;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public String getManifestPath() {
+            return manifestPath;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final MessageDigest digest;
+    private final CRC32C crc;
+
+    public IntegrityCheck(Algorithm algorithm) {
+        this.algorithm = algorithm;
+        if (algorithm == Algorithm.SHA_256) {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+            this.crc = null;
+        } else {
+            this.digest = null;
+            this.crc = new CRC32C();
+        }
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    // Wraps a stream so every byte read through it is added to the checksum
+    InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    if (digest != null) {
+                        digest.update((byte) b);
+                    } else {
+                        crc.update(b);
+                    }
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    update(buf, off, n);
+                }
+                return n;
+            }
+        };
+    }
+
+    void update(byte[] buf, int off, int len) {
+        if (digest != null) {
+            digest.update(buf, off, len);
+        } else {
+            crc.update(buf, off, len);
+        }
+    }
+
+    void update(ByteBuffer bytes) {
+        if (digest != null) {
+            digest.update(bytes);
+        } else {
+            crc.update(bytes);
+        }
+    }
+
+    // Lowercase hex of the checksum over everything read so far
+    public String toHex() {
+        if (digest != null) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    // Lowercase hex SHA-256 of a byte array
+    public static String sha256Hex(byte[] bytes) {
+        IntegrityCheck check = new IntegrityCheck(Algorithm.SHA_256);
+        check.update(bytes, 0, bytes.length);
+        return check.toHex();
+    }
+
+    /**
+     * Picks the algorithm whose manifest exists, preferring SHA-256.
+     * Throws RuntimeException if there is no manifest.
+     */
+    public static Algorithm findManifestAlgorithm() {
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (new File(algorithm.getManifestPath()).isFile()) {
+                return algorithm;
+            }
+        }
+        throw new RuntimeException("No checksum manifest found (expected "
+                + Algorithm.SHA_256.getManifestPath() + " or " + Algorithm.CRC32C.getManifestPath() + ")");
+    }
+
+    /**
+     * Reads a manifest in sha256sum format: "<hex>  <filename>" per line.
+     * A "*" before the filename (binary mode marker) is accepted and ignored.
+     */
+    public static Map<String, String> loadManifest(Algorithm algorithm) {
+        Map<String, String> expected = new HashMap<>();
+        File manifest = new File(algorithm.getManifestPath());
+        try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new RuntimeException("Malformed manifest line in " + manifest + ": " + line);
+                }
+                String name = line.substring(space).trim();
+                if (name.startsWith("*")) {
+                    name = name.substring(1);
+                }
+                expected.put(name, line.substring(0, space).toLowerCase());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read checksum manifest: " + manifest, e);
+        }
+        return expected;
+    }
+
+    /**
+     * Replaces the checksums of the named files in an existing manifest,
+     * keeping every other line as it was. The new manifest is written to a
+     * synced temp file and moved over the old one, so readers see either
+     * the old manifest or the new one.
+     */
+    public static void updateManifest(Algorithm algorithm, Map<String, String> checksums) {
+        Path manifest = Path.of(algorithm.getManifestPath());
+        Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try {
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String trimmed = line.trim();
+                int space = trimmed.indexOf(' ');
+                if (space > 0 && !trimmed.startsWith("#")) {
+                    String entry = trimmed.substring(space).trim();
+                    String hex = checksums.get(entry.startsWith("*") ? entry.substring(1) : entry);
+                    if (hex != null) {
+                        line = hex + trimmed.substring(space);
+                    }
+                }
+                lines.add(line);
+            }
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                StringBuilder text = new StringBuilder();
+                for (String line : lines) {
+                    text.append(line).append('\n');
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(true);
+            }
+            Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to update checksum manifest: " + manifest, e);
+        }
+    }
+}
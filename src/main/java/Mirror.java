@@ -0,0 +1,309 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a deciphered copy of data/ in an output directory, doing only the work that changed.
+ *
+ * The output directory holds a manifest with each source's size, modification
+ * time, SHA-256 and the SHA-256 of the key used. A source whose size, mtime
+ * and key all match is skipped without being read, so a no-op run costs one
+ * listing of each directory plus one attribute read per data file. If only
+ * the mtime changed, the content hash decides. Changed files are deciphered
+ * in parallel into temp files and atomically renamed into place; outputs
+ * whose source was deleted are removed. Data files named like the manifest or
+ * a temp file are refused, since their outputs would overwrite those.
+ */
+public class Mirror {
+    static final String MANIFEST_NAME = ".mirror-manifest";
+    private static final String TEMP_SUFFIX = ".mirror-tmp";
+
+    private final FileHandler fh;
+    private final int threads;
+
+    public Mirror(FileHandler fh) {
+        this(fh, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Mirror(FileHandler fh, int threads) {
+        this.fh = fh;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Brings outDir up to date with data/ and returns a summary line.
+     * Throws RuntimeException if data/ is packed, outDir is data/, or any file fails.
+     */
+    public String mirror(String outDir, String keyPath) {
+        if (fh.isPacked()) {
+            throw new RuntimeException("Mirror needs the loose " + FileHandler.DATA_DIR + " directory, not a container");
+        }
+        File out = new File(outDir);
+        File dataDir = new File(FileHandler.DATA_DIR);
+        try {
+            if (out.getCanonicalFile().equals(dataDir.getCanonicalFile())) {
+                throw new RuntimeException("Mirror directory must not be the data directory: " + outDir);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to resolve mirror directory: " + outDir, e);
+        }
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new RuntimeException("Unable to create mirror directory: " + outDir);
+        }
+
+        Cipher cipher = ProgramController.loadCipher(keyPath);
+        String keyHash;
+        try {
+            keyHash = IntegrityCheck.sha256Hex(Files.readAllBytes(Path.of(keyPath)));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read cipher key: " + keyPath, e);
+        }
+
+        File manifestFile = new File(out, MANIFEST_NAME);
+        Map<String, Entry> previous = readManifest(manifestFile);
+        Map<String, Entry> current = new ConcurrentHashMap<>();
+        List<String> pending = new ArrayList<>();
+        List<Entry> pendingStats = new ArrayList<>();
+
+        // Pass 1: each directory listed once, each data file's attributes read once
+        Set<String> outputs = listNames(out.toPath());
+        for (Map.Entry<String, Entry> e : statDataFiles(dataDir.toPath(), keyHash).entrySet()) {
+            String name = e.getKey();
+            Entry stat = e.getValue();
+            Entry old = previous.get(name);
+            if (old != null && old.size == stat.size && old.mtime == stat.mtime && old.keyHash.equals(keyHash)
+                    && outputs.contains(name)) {
+                current.put(name, old);
+            } else {
+                pending.add(name);
+                pendingStats.add(stat);
+            }
+        }
+
+        // Pass 2: hash or regenerate the rest in parallel
+        AtomicInteger regenerated = new AtomicInteger();
+        char[] table = cipher.decipherTable();
+        // Any non-ASCII byte may be part of a character the key changes, so it forces the decipher path
+        long[] needsDecipher = cipher.changedAsciiBytes();
+        needsDecipher[2] = -1L;
+        needsDecipher[3] = -1L;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, pending.size())));
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                String name = pending.get(i);
+                Entry stat = pendingStats.get(i);
+                Entry old = previous.get(name);
+                tasks.add(pool.submit(() -> {
+                    Entry updated = update(name, stat, old, dataDir, out, outputs.contains(name), keyHash,
+                            table, needsDecipher);
+                    if (updated != null) {
+                        current.put(name, updated);
+                        regenerated.incrementAndGet();
+                    } else {
+                        current.put(name, new Entry(stat.size, stat.mtime, old.contentHash, keyHash));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Mirror interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new RuntimeException("Mirror failed (" + cause.getMessage() + ")", cause);
+        } finally {
+            // Pass 3 and the manifest must not race a task still renaming its output
+            ProgramController.drainPool(pool, tasks);
+        }
+
+        // Pass 3: drop outputs whose source is gone; one that cannot be removed stays in the manifest for a rerun
+        int deleted = 0;
+        Map<String, Entry> manifest = new TreeMap<>(current);
+        List<String> undeleted = new ArrayList<>();
+        for (Map.Entry<String, Entry> old : previous.entrySet()) {
+            String name = old.getKey();
+            if (!current.containsKey(name)) {
+                try {
+                    if (Files.deleteIfExists(new File(out, name).toPath())) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    manifest.put(name, old.getValue());
+                    undeleted.add(name + " (" + e + ")");
+                }
+            }
+        }
+
+        writeManifest(manifestFile, manifest);
+        if (!undeleted.isEmpty()) {
+            throw new RuntimeException("Unable to remove mirror outputs whose data file is gone: "
+                    + String.join(", ", undeleted));
+        }
+        return "Mirrored " + current.size() + " files into " + outDir + " (" + regenerated.get() + " updated, "
+                + (current.size() - regenerated.get()) + " unchanged, " + deleted + " removed)";
+    }
+
+    /**
+     * Regenerates one output unless its content hash shows the source is unchanged.
+     * Returns the new manifest entry, or null if nothing needed writing.
+     */
+    private Entry update(String name, Entry stat, Entry old, File dataDir, File out, boolean hasOutput,
+                         String keyHash, char[] table, long[] needsDecipher) throws IOException {
+        File source = new File(dataDir, name);
+        File target = new File(out, name);
+
+        if (old != null && old.keyHash.equals(keyHash) && hasOutput) {
+            IntegrityCheck check = new IntegrityCheck(IntegrityCheck.Algorithm.SHA_256);
+            FileHandler.checksumFile(source, check);
+            if (check.toHex().equals(old.contentHash)) {
+                return null;
+            }
+        }
+
+        File temp = new File(out, name + TEMP_SUFFIX);
+        IntegrityCheck check = new IntegrityCheck(IntegrityCheck.Algorithm.SHA_256);
+        try {
+            if (fh.containsAnyByte(name, needsDecipher)) {
+                FileHandler.translateFile(source, temp, table, check);
+            } else {
+                // Nothing in the file can change: copy it without decoding it into the heap
+                FileHandler.checksumFile(source, check);
+                try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    fh.transferDataFile(name, channel);
+                    channel.force(true);
+                }
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IOException(name + ": " + e.getMessage(), e);
+        }
+        return new Entry(stat.size, stat.mtime, check.toHex(), keyHash);
+    }
+
+    /**
+     * Size and mtime of every regular file in data/, by name, from one
+     * directory listing and one attribute read per entry. The content hash is
+     * filled in later.
+     */
+    private static Map<String, Entry> statDataFiles(Path dataDir, String keyHash) {
+        Map<String, Entry> stats = new TreeMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dataDir)) {
+            for (Path path : entries) {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    continue;
+                }
+                String name = path.getFileName().toString();
+                if (name.equals(MANIFEST_NAME) || name.endsWith(TEMP_SUFFIX)) {
+                    throw new RuntimeException("Data file name is reserved by mirror: " + name);
+                }
+                stats.put(name, new Entry(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), "", keyHash));
+            }
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("Data directory not found: " + FileHandler.DATA_DIR, e);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read data directory: " + FileHandler.DATA_DIR, e);
+        }
+        return stats;
+    }
+
+    // Names of everything already in the mirror directory
+    private static Set<String> listNames(Path dir) {
+        Set<String> names = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path path : entries) {
+                names.add(path.getFileName().toString());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read mirror directory: " + dir, e);
+        }
+        return names;
+    }
+
+    // Manifest line: size mtime contenthash keyhash name (name last, so it may contain spaces)
+    private static Map<String, Entry> readManifest(File manifestFile) {
+        Map<String, Entry> entries = new TreeMap<>();
+        if (!manifestFile.isFile()) {
+            return entries;
+        }
+        try {
+            for (String line : Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ", 5);
+                if (parts.length != 5) {
+                    throw new RuntimeException("Malformed mirror manifest line: " + line);
+                }
+                entries.put(parts[4], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("Unable to read mirror manifest: " + manifestFile, e);
+        }
+        return entries;
+    }
+
+    private static void writeManifest(File manifestFile, Map<String, Entry> entries) {
+        Path temp = manifestFile.toPath().resolveSibling(MANIFEST_NAME + TEMP_SUFFIX);
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Entry> e : new TreeMap<>(entries).entrySet()) {
+            Entry entry = e.getValue();
+            text.append(entry.size).append(' ').append(entry.mtime).append(' ').append(entry.contentHash)
+                    .append(' ').append(entry.keyHash).append(' ').append(e.getKey()).append('\n');
+        }
+        try {
+            // Synced before the rename, so a crash cannot leave an empty manifest in place
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, manifestFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write mirror manifest: " + manifestFile, e);
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        final String contentHash;
+        final String keyHash;
+
+        Entry(long size, long mtime, String contentHash, String keyHash) {
+            this.size = size;
+            this.mtime = mtime;
+            this.contentHash = contentHash;
+            this.keyHash = keyHash;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class ProgramController {
 
     private final FileHandler fh = new FileHandler();
-    private static final String DEFAULT_KEY_PATH = "ciphers/key.txt";
+    static final String DEFAULT_KEY_PATH = "ciphers/key.txt";
 
     public String listFiles() {
-        List<String> files = fh.listDataFiles();
+        return formatFileList(fh.listDataFiles());
+    }
 
+    /**
+     * Formats a sorted file list with two-digit numbers ("01 filea.txt").
+     */
+    static String formatFileList(List<String> files) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < files.size(); i++) {
             String num = String.format("%02d", i + 1);
@@ -22,24 +32,209 @@ public class ProgramController {
     }
 
     public String getFileContents(String fileNumber, String keyPath) {
-        // 1) normalize/validate file number
-        int index = parseFileNumberToIndex(fileNumber);
+        // 1) pick filename from the sorted list
+        String filename = resolveFilename(fileNumber);
+
+        // 2) read raw file content (ciphered or plain)
+        String raw = fh.readDataFile(filename);
+
+        // 3) decipher using Cipher + provided key
+        return loadCipher(keyPath).decipher(raw);
+    }
+
+    /**
+     * Shows a file with one listing and one key load. If deciphering cannot
+     * change the file, its raw bytes are streamed straight to out with
+     * FileChannel.transferTo and null is returned; what is written equals
+     * getFileContents(fileNumber, keyPath). Otherwise nothing is written and
+     * the deciphered contents are returned for the caller to print. A null
+     * keyPath means the default key. The
+     * direct path is skipped when the file contains a byte the key changes, a
+     * carriage return or any non-ASCII byte (whose decoding or line handling
+     * could differ), or when data/ is packed.
+     */
+    public String writeOrGetFileContents(String fileNumber, String keyPath, WritableByteChannel out) {
+        String filename = resolveFilename(fileNumber);
+        Cipher cipher = loadCipher(keyPath == null ? DEFAULT_KEY_PATH : keyPath);
+        if (!fh.isPacked()) {
+            long[] needsDecipher = cipher.changedAsciiBytes();
+            needsDecipher[0] |= 1L << '\r';
+            needsDecipher[2] = -1L;
+            needsDecipher[3] = -1L;
+            if (!fh.containsAnyByte(filename, needsDecipher)) {
+                writeDirect(filename, out);
+                return null;
+            }
+        }
+        String raw = fh.readDataFile(filename);
+        // An identity key would hand back an equal copy of the text
+        return cipher.isIdentity() ? raw : cipher.decipher(raw);
+    }
+
+    private void writeDirect(String filename, WritableByteChannel out) {
+        // readDataFile ends every line, including the last, with a newline
+        int last = fh.transferDataFile(filename, out);
+        if (last != -1 && last != '\n') {
+            try {
+                out.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write file contents: " + filename, e);
+            }
+        }
+    }
+
+    /**
+     * Same as getFileContents, but checksums the raw bytes while reading and
+     * compares them with the sidecar manifest (data.sha256 or data.crc32c).
+     * Throws RuntimeException if the file is missing from the manifest or
+     * its checksum does not match.
+     */
+    public VerifiedContents getVerifiedFileContents(String fileNumber, String keyPath) {
+        String filename = resolveFilename(fileNumber);
+
+        IntegrityCheck.Algorithm algorithm = IntegrityCheck.findManifestAlgorithm();
+        String expected = IntegrityCheck.loadManifest(algorithm).get(filename);
+        if (expected == null) {
+            throw new RuntimeException("No " + algorithm.getDisplayName() + " checksum in "
+                    + algorithm.getManifestPath() + " for: " + filename);
+        }
+
+        // Key problems should be reported before the file is read
+        Cipher cipher = loadCipher(keyPath);
+        IntegrityCheck check = new IntegrityCheck(algorithm);
+        String raw = fh.readDataFile(filename, check);
+
+        String actual = check.toHex();
+        if (!actual.equals(expected)) {
+            throw new RuntimeException("Checksum mismatch for " + filename + " (" + algorithm.getDisplayName()
+                    + "): expected " + expected + ", got " + actual);
+        }
+        return new VerifiedContents(filename, algorithm, cipher.decipher(raw));
+    }
+
+    // Deciphered contents of a file whose checksum matched the manifest
+    public static class VerifiedContents {
+        private final String filename;
+        private final IntegrityCheck.Algorithm algorithm;
+        private final String contents;
+
+        public VerifiedContents(String filename, IntegrityCheck.Algorithm algorithm, String contents) {
+            this.filename = filename;
+            this.algorithm = algorithm;
+            this.contents = contents;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public IntegrityCheck.Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public String getContents() {
+            return contents;
+        }
+    }
+
+    // Same as getFileContents, also reporting which decipher engine ran and why
+    public EngineContents getFileContentsWithEngine(String fileNumber, String keyPath) {
+        String filename = resolveFilename(fileNumber);
+        String raw = fh.readDataFile(filename);
+        Cipher cipher = loadCipher(keyPath);
+        DecipherEngine engine = cipher.engineFor(raw.length());
+        return new EngineContents(cipher.decipher(raw, engine),
+                EngineSelector.current().describe(raw.length(), cipher.alphabet()));
+    }
+
+    // Deciphered contents plus a one-line description of the engine that produced them
+    public static class EngineContents {
+        private final String contents;
+        private final String engine;
 
-        // 2) get sorted file list and pick filename
+        public EngineContents(String contents, String engine) {
+            this.contents = contents;
+            this.engine = engine;
+        }
+
+        public String getContents() {
+            return contents;
+        }
+
+        public String getEngine() {
+            return engine;
+        }
+    }
+
+    // Times the decipher engines on this machine and saves the thresholds; returns a summary line
+    public String calibrateEngines() {
+        EngineSelector selector = EngineSelector.calibrate();
+        return "Calibrated decipher engines: " + selector.thresholds() + " (saved to " + EngineSelector.CACHE_PATH + ")";
+    }
+
+    // Re-enciphers every data file from the old key to the new one; returns a summary line
+    public String rekeyDataFiles(String oldKeyPath, String newKeyPath) {
+        return new Rekeyer(fh).rekey(oldKeyPath, newKeyPath);
+    }
+
+    // Enciphers every plaintext file in sourceDir into data/; returns a summary line
+    public String ingestFiles(String sourceDir, String keyPath) {
+        return new Ingester(fh).ingest(sourceDir, keyPath);
+    }
+
+    // Brings a deciphered copy of data/ in outDir up to date; returns a summary line
+    public String mirrorDataFiles(String outDir, String keyPath) {
+        return new Mirror(fh).mirror(outDir, keyPath);
+    }
+
+    /**
+     * Deciphers data/ into outDir across worker JVMs; returns a summary with
+     * per-worker stats. bindAddress may be null for loopback. The shared
+     * token is read from TOPSECRET_TOKEN.
+     */
+    public String coordinateDataFiles(int localWorkers, String outDir, String keyPath, String bindAddress, int port) {
+        return new Coordinator(fh).coordinate(localWorkers, outDir, keyPath, bindAddress, port,
+                System.getenv(Coordinator.TOKEN_ENV));
+    }
+
+    // Serves shards for a coordinator until it is done, with the token from TOPSECRET_TOKEN; returns a summary line
+    public String runWorker(String host, int port) {
+        return new Worker(fh).run(host, port, System.getenv(Coordinator.TOKEN_ENV));
+    }
+
+    // Validates a text key and writes its compiled binary form; returns a summary line
+    public String compileKey(String textKeyPath, String compiledKeyPath) {
+        try {
+            int pairs = Cipher.compileKey(textKeyPath, compiledKeyPath);
+            return "Compiled " + pairs + " key pairs into " + compiledKeyPath;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to compile cipher key: " + textKeyPath + " (" + e.getMessage() + ")", e);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cipher key file: " + textKeyPath + " (" + e.getMessage() + ")", e);
+        }
+    }
+
+    // Packs data/ into a single indexed container file; returns a summary line
+    public String packDataFiles(String containerPath) {
+        int count = fh.listDataFiles().size();
+        long size = fh.packDataFiles(containerPath);
+        return "Packed " + count + " files into " + containerPath + " (" + size + " bytes)";
+    }
+
+    // Maps a file number to its name in the sorted data/ listing
+    private String resolveFilename(String fileNumber) {
+        int index = parseFileNumberToIndex(fileNumber);
         List<String> files = fh.listDataFiles();
         if (index < 0 || index >= files.size()) {
             throw new RuntimeException("File number out of range: " + fileNumber);
         }
-        String filename = files.get(index);
-
-        // 3) read raw file content (ciphered or plain)
-        String raw = fh.readDataFile(filename);
+        return files.get(index);
+    }
 
-        // 4) decipher using Cipher + provided key
-        // For 3-person teams, you can just return raw (or still run cipher if provided)
+    // Loads a key, wrapping read and validation failures with the key path
+    static Cipher loadCipher(String keyPath) {
         try {
-            Cipher cipher = new Cipher(keyPath);
-            return cipher.decipher(raw);
+            return new Cipher(keyPath);
         } catch (IOException e) {
             throw new RuntimeException("Unable to read cipher key: " + keyPath, e);
         } catch (IllegalArgumentException e) {
@@ -48,11 +243,38 @@ public class ProgramController {
         }
     }
 
+    /**
+     * Stops a per-file worker pool once its tasks are over: tasks that have
+     * not started are cancelled, and running ones are left to finish rather
+     * than interrupted, since an interrupt closes any FileChannel they are
+     * writing. Returns only when no task can still touch the files, so the
+     * caller may then close or delete what the tasks were using.
+     */
+    static void drainPool(ExecutorService pool, List<? extends Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            task.cancel(false);
+        }
+        pool.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Converts "01" or "1" into a 0-based index.
      * "01" -> 0, "02" -> 1, etc.
      */
-    private int parseFileNumberToIndex(String fileNumber) {
+    static int parseFileNumberToIndex(String fileNumber) {
         if (fileNumber == null || fileNumber.trim().isEmpty()) {
             throw new RuntimeException("File number is required.");
         }
@@ -0,0 +1,237 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Re-enciphers every file in data/ from one key to another in a single pass.
+ *
+ * Each file is streamed through a fused old-to-new translation table into a
+ * temp file under .rekey/, recorded in a journal, then atomically moved over
+ * the original. After an interruption, running the same rekey again finishes
+ * journaled files and redoes the rest; no file is ever rekeyed twice and no
+ * plaintext is written.
+ *
+ * If data.sha256 or data.crc32c exists, the checksum of each rewritten file
+ * is computed from the bytes as they are written, and the manifest entries
+ * are replaced atomically once every file is in place.
+ */
+public class Rekeyer {
+    static final String WORK_DIR = ".rekey";
+    static final String JOURNAL_NAME = "journal.txt";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final FileHandler fh;
+    private final int threads;
+
+    public Rekeyer(FileHandler fh) {
+        this(fh, Runtime.getRuntime().availableProcessors());
+    }
+
+    public Rekeyer(FileHandler fh, int threads) {
+        this.fh = fh;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Rekeys all data files and returns a one-line summary.
+     * Throws RuntimeException if data/ is packed, the new key does not
+     * round-trip, a different unfinished rekey is pending or a file fails.
+     */
+    public String rekey(String oldKeyPath, String newKeyPath) {
+        if (fh.isPacked()) {
+            throw new RuntimeException("Rekey needs the loose " + FileHandler.DATA_DIR + " directory, not a container");
+        }
+        Cipher oldKey = ProgramController.loadCipher(oldKeyPath);
+        Cipher newKey = ProgramController.loadCipher(newKeyPath);
+        if (!newKey.isRoundTrip()) {
+            throw new RuntimeException("Cipher key cannot be used for rekey: both lines must use the same "
+                    + "characters, or rekeyed files would not decipher back to the original: " + newKeyPath);
+        }
+        char[] table = oldKey.rekeyTable(newKey);
+
+        File workDir = new File(WORK_DIR);
+        File journal = new File(workDir, JOURNAL_NAME);
+        String header = "keys " + keyIdentity(oldKeyPath, newKeyPath);
+        Set<String> committed = readJournal(journal, header);
+        if (!workDir.exists() && !workDir.mkdirs()) {
+            throw new RuntimeException("Unable to create work directory: " + WORK_DIR);
+        }
+
+        // Checksums of the rewritten files for each manifest that exists, by file name
+        Map<IntegrityCheck.Algorithm, Map<String, String>> checksums = new EnumMap<>(IntegrityCheck.Algorithm.class);
+        for (IntegrityCheck.Algorithm algorithm : IntegrityCheck.Algorithm.values()) {
+            if (new File(algorithm.getManifestPath()).isFile()) {
+                checksums.put(algorithm, new ConcurrentHashMap<>());
+            }
+        }
+
+        List<String> files = fh.listDataFiles();
+        AtomicInteger rekeyed = new AtomicInteger();
+        AtomicInteger resumed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+        List<Future<?>> tasks = new ArrayList<>();
+        try (FileChannel journalChannel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (committed.isEmpty() && journal.length() == 0) {
+                appendJournal(journalChannel, header);
+            }
+
+            try {
+                for (String name : files) {
+                    tasks.add(pool.submit(() -> {
+                        if (committed.contains(name)) {
+                            finishCommitted(name, checksums);
+                            resumed.incrementAndGet();
+                        } else {
+                            rekeyFile(name, table, journalChannel, checksums);
+                            rekeyed.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } finally {
+                // No task may still be appending when the journal closes
+                ProgramController.drainPool(pool, tasks);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write rekey journal: " + journal, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Rekey interrupted; run it again to resume", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new RuntimeException("Rekey failed; run it again to resume (" + cause.getMessage() + ")", cause);
+        }
+
+        // Everything is in place; the journal stays until the manifests match, so a failure here can resume
+        for (Map.Entry<IntegrityCheck.Algorithm, Map<String, String>> manifest : checksums.entrySet()) {
+            IntegrityCheck.updateManifest(manifest.getKey(), manifest.getValue());
+        }
+        journal.delete();
+        workDir.delete();
+        return "Rekeyed " + rekeyed.get() + " files" + (resumed.get() > 0 ? " (" + resumed.get() + " resumed)" : "");
+    }
+
+    // Translates one file into a synced temp file, checksumming the output, journals it, then swaps it in
+    private void rekeyFile(String name, char[] table, FileChannel journalChannel,
+                           Map<IntegrityCheck.Algorithm, Map<String, String>> checksums) throws IOException {
+        File source = fh.resolveDataFile(name);
+        File temp = tempFile(name);
+        IntegrityCheck[] outputChecks = newChecks(checksums);
+        try {
+            FileHandler.translateFile(source, temp, table, null, outputChecks);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IOException(name + ": " + e.getMessage(), e);
+        }
+        recordChecks(name, outputChecks, checksums);
+
+        appendJournal(journalChannel, name);
+        Files.move(temp.toPath(), source.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A journaled file is already rekeyed, or its temp file is complete and
+     * only needs moving. Its new checksums were lost with the previous run,
+     * so they are read back from the file.
+     */
+    private void finishCommitted(String name, Map<IntegrityCheck.Algorithm, Map<String, String>> checksums)
+            throws IOException {
+        File temp = tempFile(name);
+        File target = fh.resolveDataFile(name);
+        if (temp.exists()) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        IntegrityCheck[] checks = newChecks(checksums);
+        for (IntegrityCheck check : checks) {
+            FileHandler.checksumFile(target, check);
+        }
+        recordChecks(name, checks, checksums);
+    }
+
+    // One fresh check per manifest being updated, in the map's order
+    private static IntegrityCheck[] newChecks(Map<IntegrityCheck.Algorithm, Map<String, String>> checksums) {
+        IntegrityCheck[] checks = new IntegrityCheck[checksums.size()];
+        int i = 0;
+        for (IntegrityCheck.Algorithm algorithm : checksums.keySet()) {
+            checks[i++] = new IntegrityCheck(algorithm);
+        }
+        return checks;
+    }
+
+    private static void recordChecks(String name, IntegrityCheck[] checks,
+                                     Map<IntegrityCheck.Algorithm, Map<String, String>> checksums) {
+        int i = 0;
+        for (Map<String, String> manifest : checksums.values()) {
+            manifest.put(name, checks[i++].toHex());
+        }
+    }
+
+    private static File tempFile(String name) {
+        return new File(WORK_DIR, name + TEMP_SUFFIX);
+    }
+
+    // Appends one line and syncs it to disk, so a file is never moved before its journal entry is durable
+    private static void appendJournal(FileChannel journalChannel, String line) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (journalChannel) {
+            while (bytes.hasRemaining()) {
+                journalChannel.write(bytes);
+            }
+            journalChannel.force(true);
+        }
+    }
+
+    // Returns the files a previous run committed, or an empty set if there was none
+    private static Set<String> readJournal(File journal, String header) {
+        Set<String> committed = new HashSet<>();
+        if (!journal.exists()) {
+            return committed;
+        }
+        try {
+            List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                return committed;
+            }
+            if (!lines.get(0).equals(header)) {
+                throw new RuntimeException("An unfinished rekey with different keys is pending in " + WORK_DIR
+                        + "; rerun it with the same keys or remove " + WORK_DIR);
+            }
+            committed.addAll(lines.subList(1, lines.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read rekey journal: " + journal, e);
+        }
+        return committed;
+    }
+
+    // SHA-256 of both key files, so a resumed run can only continue the same rotation
+    static String keyIdentity(String oldKeyPath, String newKeyPath) {
+        try {
+            return IntegrityCheck.sha256Hex(Files.readAllBytes(Path.of(oldKeyPath))) + " "
+                    + IntegrityCheck.sha256Hex(Files.readAllBytes(Path.of(newKeyPath)));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read cipher key for rekey", e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Worker side of a coordinated run (see Coordinator for the protocol).
+ *
+ * Connects to a coordinator, proves it knows the shared token and checks that
+ * the coordinator does too, loads the key it names, then deciphers each shard
+ * of files from its own data/ and streams the results back until the
+ * coordinator says it is done. Files are translated through FileHandler's
+ * pooled buffers straight onto the connection, so memory use does not grow
+ * with file size. A file that fails is reported to the coordinator rather
+ * than ending the connection.
+ */
+public class Worker {
+    private static final IntegrityCheck[] NO_CHECKS = new IntegrityCheck[0];
+
+    private final FileHandler fh;
+
+    public Worker(FileHandler fh) {
+        this.fh = fh;
+    }
+
+    /**
+     * Serves shards until the coordinator is done; returns a summary line.
+     * The coordinator closes the connection instead of sending DONE when it
+     * no longer needs the copy this worker is running, so a connection lost
+     * after the handshake ends the worker normally.
+     */
+    public String run(String host, int port, String token) {
+        if (token == null || token.isEmpty()) {
+            throw new RuntimeException("Set " + Coordinator.TOKEN_ENV + " to the token the coordinator was started with");
+        }
+        int shards = 0;
+        int files = 0;
+        boolean connected = false;
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            String keyPath;
+            try {
+                keyPath = handshake(in, out, token);
+            } catch (EOFException e) {
+                throw new RuntimeException("Coordinator " + host + ":" + port + " closed the connection during the "
+                        + "handshake; check that " + Coordinator.TOKEN_ENV + " matches the coordinator's", e);
+            }
+            char[] table = ProgramController.loadCipher(keyPath).decipherTable();
+            connected = true;
+            ChunkChannel chunks = new ChunkChannel(out);
+
+            int shardId;
+            while ((shardId = in.readInt()) != Coordinator.DONE) {
+                String[] names = new String[in.readInt()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = in.readUTF();
+                }
+                long start = System.nanoTime();
+                out.writeInt(shardId);
+                for (String name : names) {
+                    try (ReadableByteChannel source = fh.openDataChannel(name)) {
+                        FileHandler.translate(source, chunks, table, null, NO_CHECKS);
+                    } catch (IOException | RuntimeException e) {
+                        if (chunks.broken) {
+                            throw e;
+                        }
+                        out.writeInt(Coordinator.FAILED);
+                        out.writeUTF(e.getMessage() == null ? e.toString() : e.getMessage());
+                        out.flush();
+                        return "Worker stopped after " + shards + " shards";
+                    }
+                    out.writeInt(Coordinator.END_OF_FILE);
+                }
+                out.writeLong(System.nanoTime() - start);
+                out.flush();
+                shards++;
+                files += names.length;
+            }
+        } catch (IOException e) {
+            if (connected) {
+                return "Worker processed " + shards + " shards (" + files + " files) before the coordinator closed";
+            }
+            throw new RuntimeException("Lost connection to coordinator " + host + ":" + port
+                    + " (" + e.getMessage() + ")", e);
+        }
+        return "Worker processed " + shards + " shards (" + files + " files)";
+    }
+
+    /**
+     * Worker side of the handshake. Answers the coordinator's nonce with one
+     * of its own and a proof of the token, then returns the key path once the
+     * coordinator's proof checks out. The token itself never crosses the wire.
+     */
+    static String handshake(DataInputStream in, DataOutputStream out, String token) throws IOException {
+        byte[] coordinatorNonce = new byte[Coordinator.NONCE_LENGTH];
+        in.readFully(coordinatorNonce);
+        byte[] workerNonce = Coordinator.nonce();
+        out.write(workerNonce);
+        out.write(Coordinator.proof(token, Coordinator.WORKER_ROLE, coordinatorNonce, workerNonce));
+        out.flush();
+
+        byte[] proof = new byte[Coordinator.PROOF_LENGTH];
+        in.readFully(proof);
+        if (!MessageDigest.isEqual(proof,
+                Coordinator.proof(token, Coordinator.COORDINATOR_ROLE, coordinatorNonce, workerNonce))) {
+            throw new RuntimeException("Coordinator failed the token check; it was started with a different "
+                    + Coordinator.TOKEN_ENV);
+        }
+        return in.readUTF();
+    }
+
+    // Frames everything written to it as int-length chunks on the coordinator connection
+    private static final class ChunkChannel implements WritableByteChannel {
+        private final DataOutputStream out;
+        private final byte[] buf = new byte[Cipher.TRANSLATE_BUFFER_SIZE];
+        // Set when the connection itself failed, as opposed to the file being read
+        boolean broken;
+
+        ChunkChannel(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            if (length == 0) {
+                return 0;
+            }
+            try {
+                out.writeInt(length);
+                while (src.hasRemaining()) {
+                    int n = Math.min(buf.length, src.remaining());
+                    src.get(buf, 0, n);
+                    out.write(buf, 0, n);
+                }
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
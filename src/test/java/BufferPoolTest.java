@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for BufferPool size classes, reuse and leak detection
+class BufferPoolTest {
+
+    @Test
+    @DisplayName("acquire rounds up to a power-of-two size class")
+    void testAcquireRoundsUpToSizeClass() {
+        BufferPool pool = new BufferPool(2);
+        try (BufferPool.Slab small = pool.acquire(1);
+             BufferPool.Slab medium = pool.acquire(5000);
+             BufferPool.Slab exact = pool.acquire(64 * 1024)) {
+            assertEquals(BufferPool.MIN_SLAB_SIZE, small.capacity());
+            assertEquals(8 * 1024, medium.capacity());
+            assertEquals(64 * 1024, exact.capacity());
+            assertEquals(exact.capacity(), exact.chars().capacity());
+            assertTrue(exact.bytes().isDirect());
+            assertTrue(exact.chars().isDirect());
+        }
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    @DisplayName("released slab is reused by the same thread, cleared")
+    void testReleasedSlabIsReused() {
+        BufferPool pool = new BufferPool(2);
+        BufferPool.Slab first = pool.acquire(100);
+        ByteBuffer firstBytes = first.bytes().put((byte) 1);
+        first.chars().put('x');
+        first.close();
+
+        try (BufferPool.Slab second = pool.acquire(200)) {
+            assertSame(firstBytes, second.bytes());
+            assertEquals(0, second.bytes().position());
+            assertEquals(0, second.chars().position());
+        }
+    }
+
+    @Test
+    @DisplayName("slabs released on another thread are shared through the pool")
+    void testSlabSharedAcrossThreads() throws Exception {
+        BufferPool pool = new BufferPool(2);
+        ByteBuffer shared = CompletableFuture.supplyAsync(() -> {
+            BufferPool.Slab a = pool.acquire(100);
+            BufferPool.Slab b = pool.acquire(100);
+            ByteBuffer bBytes = b.bytes();
+            a.close();
+            b.close();
+            return bBytes;
+        }).get();
+
+        try (BufferPool.Slab reused = pool.acquire(100)) {
+            assertSame(shared, reused.bytes());
+        }
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    @DisplayName("oversized requests are served but not pooled")
+    void testOversizedSlabNotPooled() {
+        BufferPool pool = new BufferPool(2);
+        BufferPool.Slab big = pool.acquire(BufferPool.MAX_SLAB_SIZE + 1);
+        assertEquals(BufferPool.MAX_SLAB_SIZE + 1, big.capacity());
+        ByteBuffer bigBytes = big.bytes();
+        big.close();
+        try (BufferPool.Slab next = pool.acquire(BufferPool.MAX_SLAB_SIZE + 1)) {
+            assertNotSame(bigBytes, next.bytes());
+        }
+        assertEquals(0, pool.outstanding());
+    }
+
+    @Test
+    @DisplayName("outstanding counts leaked slabs and double release fails")
+    void testLeakAndDoubleReleaseDetection() {
+        BufferPool pool = new BufferPool(2);
+        BufferPool.Slab leaked = pool.acquire(100);
+        assertEquals(1, pool.outstanding());
+        leaked.close();
+        assertEquals(0, pool.outstanding());
+        assertThrows(IllegalStateException.class, leaked::close);
+    }
+
+    @Test
+    @DisplayName("a stale handle cannot release or use buffers that were handed out again")
+    void testStaleCloseAfterReuse() {
+        BufferPool pool = new BufferPool(2);
+        BufferPool.Slab stale = pool.acquire(100);
+        stale.close();
+
+        try (BufferPool.Slab current = pool.acquire(100)) {
+            assertThrows(IllegalStateException.class, stale::close);
+            assertThrows(IllegalStateException.class, stale::bytes);
+            assertEquals(1, pool.outstanding());
+            // The buffers stay with the current holder rather than going back to the pool
+            try (BufferPool.Slab other = pool.acquire(100)) {
+                assertNotSame(current.bytes(), other.bytes());
+            }
+        }
+        assertEquals(0, pool.outstanding());
+    }
+}
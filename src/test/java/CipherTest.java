@@ -5,9 +5,14 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 // Tests for Cipher key validation and deciphering
 public class CipherTest {
@@ -76,6 +81,86 @@ public class CipherTest {
         assertEquals("", cipher.decipher(""));
     }
 
+    @Test
+    public void testEncipherRoundTrip() throws IOException {
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        assertEquals("Ifmmp3", cipher.encipher("Hello2"));
+        String text = "Hello, World! 0123456789 \u00e9";
+        assertEquals(text, cipher.decipher(cipher.encipher(text)));
+        assertTrue(cipher.isRoundTrip());
+    }
+
+    @Test
+    public void testKeyWithDifferentCharacterSetsIsNotRoundTrip() throws IOException {
+        File keyFile = tempDir.resolve("shifted_key.txt").toFile();
+        try (FileWriter writer = new FileWriter(keyFile)) {
+            writer.write("abc\n");
+            writer.write("xyz\n");
+        }
+        assertFalse(new Cipher(keyFile.getAbsolutePath()).isRoundTrip());
+    }
+
+    @Test
+    public void testCompiledKeyMatchesTextKey() throws IOException {
+        String compiledPath = tempDir.resolve("key.bin").toString();
+        assertEquals(validActualLine.length(), Cipher.compileKey(validKeyFile.getAbsolutePath(), compiledPath));
+
+        Cipher text = new Cipher(validKeyFile.getAbsolutePath());
+        Cipher compiled = new Cipher(compiledPath);
+        assertEquals(text.decipher("Ifmmp3, Xpsme!"), compiled.decipher("Ifmmp3, Xpsme!"));
+        assertEquals(text.encipher("Hello2"), compiled.encipher("Hello2"));
+    }
+
+    @Test
+    public void testCompiledKeyChecksumMismatch() throws IOException {
+        Path compiled = tempDir.resolve("key.bin");
+        Cipher.compileKey(validKeyFile.getAbsolutePath(), compiled.toString());
+        byte[] bytes = Files.readAllBytes(compiled);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(compiled, bytes);
+        assertThrows(IllegalArgumentException.class, () -> new Cipher(compiled.toString()));
+    }
+
+    @Test
+    public void testCompiledKeyKeepsKeyProperties() throws IOException {
+        File oneWay = tempDir.resolve("oneway.txt").toFile();
+        Files.writeString(oneWay.toPath(), "ab\u00e9\nxyz\n", StandardCharsets.UTF_8);
+        Path compiled = tempDir.resolve("oneway.bin");
+        // An existing compiled key is replaced whole, leaving no temp file behind
+        Files.writeString(compiled, "old");
+
+        assertEquals(3, Cipher.compileKey(oneWay.getAbsolutePath(), compiled.toString()));
+        Cipher text = new Cipher(oneWay.getAbsolutePath());
+        Cipher loaded = new Cipher(compiled.toString());
+        assertFalse(loaded.isRoundTrip());
+        assertEquals(text.alphabet(), loaded.alphabet());
+        assertArrayEquals(text.decipherTable(), loaded.decipherTable());
+        assertArrayEquals(text.encipherTable(), loaded.encipherTable());
+        assertFalse(Files.exists(tempDir.resolve("oneway.bin.tmp")));
+    }
+
+    @Test
+    public void testCompileKeyRejectsInvalidKey() throws IOException {
+        File invalidFile = tempDir.resolve("invalid5.txt").toFile();
+        try (FileWriter writer = new FileWriter(invalidFile)) {
+            writer.write("abc\n");
+            writer.write("ab\n");
+        }
+        String compiledPath = tempDir.resolve("invalid.bin").toString();
+        assertThrows(IllegalArgumentException.class,
+                () -> Cipher.compileKey(invalidFile.getAbsolutePath(), compiledPath));
+        assertFalse(new File(compiledPath).exists());
+    }
+
+    @Test
+    public void testTextKeyIsReadAsUtf8() throws IOException {
+        File unicodeKey = tempDir.resolve("unicode_key.txt").toFile();
+        Files.writeString(unicodeKey.toPath(), "a\u00e9\u4e2d\n\u4e2da\u00e9\n",
+                StandardCharsets.UTF_8);
+        Cipher cipher = new Cipher(unicodeKey.getAbsolutePath());
+        assertEquals("a\u00e9\u4e2d", cipher.decipher("\u4e2da\u00e9"));
+    }
+
     @Test
     public void testMissingKeyFile() {
         String nonExistentPath = tempDir.resolve("nonexistent.txt").toString();
@@ -111,6 +196,155 @@ public class CipherTest {
         assertThrows(IllegalArgumentException.class, () -> new Cipher(invalidFile.getAbsolutePath()));
     }
 
+    @Test
+    public void testDecipherCharBuffers() throws IOException {
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        CharBuffer in = CharBuffer.wrap("Ifmmp3, xpsme");
+        CharBuffer out = CharBuffer.allocate(5);
+        assertEquals(5, cipher.decipher(in, out));
+        assertEquals(5, in.position());
+        out.flip();
+        assertEquals("Hello", out.toString());
+    }
+
+    @Test
+    public void testDecipherDirectCharBuffers() throws IOException {
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        CharBuffer in = ByteBuffer.allocateDirect(64).asCharBuffer();
+        in.put("Ifmmp3!").flip();
+        CharBuffer out = ByteBuffer.allocateDirect(64).asCharBuffer();
+        assertEquals(7, cipher.decipher(in, out));
+        out.flip();
+        assertEquals("Hello2!", out.toString());
+    }
+
+    @Test
+    public void testKeyAlphabetClassification() throws IOException {
+        assertEquals(DecipherEngine.Alphabet.ASCII, new Cipher(validKeyFile.getAbsolutePath()).alphabet());
+
+        File bmpKey = tempDir.resolve("bmp.txt").toFile();
+        Files.writeString(bmpKey.toPath(), "ab\u00e9\nb\u00e9a\n", StandardCharsets.UTF_8);
+        assertEquals(DecipherEngine.Alphabet.BMP, new Cipher(bmpKey.getAbsolutePath()).alphabet());
+
+        File supplementaryKey = tempDir.resolve("supplementary.txt").toFile();
+        Files.writeString(supplementaryKey.toPath(), "a\uD83D\uDE00\n\uD83D\uDE00a\n",
+                StandardCharsets.UTF_8);
+        assertEquals(DecipherEngine.Alphabet.SUPPLEMENTARY, new Cipher(supplementaryKey.getAbsolutePath()).alphabet());
+    }
+
+    @Test
+    public void testDecipherWithEachEngineMatches() throws IOException {
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        String text = "Ifmmp3! Caf\u00e9 \u20ac?".repeat(1000);
+        String expected = cipher.decipher(text, DecipherEngine.SCALAR);
+        assertEquals("Hello2! B0e\u00e9 \u20ac?".repeat(1000), expected);
+        assertEquals(expected, cipher.decipher(text, DecipherEngine.BYTE_TABLE));
+        assertEquals(expected, cipher.decipher(text, DecipherEngine.PARALLEL));
+        assertEquals(expected, cipher.decipher(text));
+    }
+
+    @Test
+    public void testDecipherCharArrayInPlace() throws IOException {
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        char[] chars = "xxIfmmpxx".toCharArray();
+        cipher.decipher(chars, 2, 5);
+        assertEquals("xxHelloxx", new String(chars));
+    }
+
+    @Test
+    public void testBufferDecipherAllocationBudget() throws IOException {
+        assumeTrue(ThreadAllocation.allocatedBytes() >= 0, "Thread allocation measurement not supported");
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        CharBuffer in = CharBuffer.wrap("Uijt jt b tfdsfu nfttbhf. Nffu bu mpdbujpo 42 bu oppo.".toCharArray());
+        CharBuffer out = CharBuffer.allocate(in.capacity());
+
+        // Warm up so class loading and JIT compilation are not measured
+        for (int i = 0; i < 20_000; i++) {
+            in.rewind();
+            out.clear();
+            cipher.decipher(in, out);
+        }
+
+        int calls = 10_000;
+        long before = ThreadAllocation.allocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            in.rewind();
+            out.clear();
+            cipher.decipher(in, out);
+        }
+        long allocated = ThreadAllocation.allocatedBytes() - before;
+
+        // Steady state must not allocate; the budget only absorbs measurement noise
+        assertTrue(allocated < 4096, "Buffer decipher allocated " + allocated + " bytes over " + calls + " calls");
+    }
+
+    @Test
+    public void testStringDecipherAllocationBudget() throws IOException {
+        assumeTrue(ThreadAllocation.allocatedBytes() >= 0, "Thread allocation measurement not supported");
+        Cipher cipher = new Cipher(validKeyFile.getAbsolutePath());
+        String text = "Uijt jt b tfdsfu nfttbhf. Nffu bu mpdbujpo 42 bu oppo.".repeat(20);
+
+        for (int i = 0; i < 20_000; i++) {
+            cipher.decipher(text);
+        }
+
+        int calls = 1_000;
+        long before = ThreadAllocation.allocatedBytes();
+        for (int i = 0; i < calls; i++) {
+            cipher.decipher(text);
+        }
+        long perCall = (ThreadAllocation.allocatedBytes() - before) / calls;
+
+        // One char[] working copy plus the result String; no per-character boxing or builder growth
+        long budget = 4L * text.length() + 256;
+        assertTrue(perCall <= budget, "String decipher allocated " + perCall + " bytes per call, budget " + budget);
+    }
+
+    @Test
+    public void testIdentityPairsAreNotChangedBytes() throws IOException {
+        File partialKey = tempDir.resolve("partial_key.txt").toFile();
+        try (FileWriter writer = new FileWriter(partialKey)) {
+            writer.write("abcd\n");
+            writer.write("abdc\n");
+        }
+        Cipher cipher = new Cipher(partialKey.getAbsolutePath());
+        long[] changed = cipher.changedAsciiBytes();
+        assertEquals(0, changed[1] & (1L << ('a' - 64)));
+        assertEquals(0, changed[1] & (1L << ('b' - 64)));
+        assertTrue((changed[1] & (1L << ('c' - 64))) != 0);
+        assertTrue((changed[1] & (1L << ('d' - 64))) != 0);
+        assertFalse(cipher.isIdentity());
+    }
+
+    @Test
+    public void testIdentityKeyDetected() throws IOException {
+        File identityKey = tempDir.resolve("identity_key.txt").toFile();
+        try (FileWriter writer = new FileWriter(identityKey)) {
+            writer.write("abc\n");
+            writer.write("abc\n");
+        }
+        assertTrue(new Cipher(identityKey.getAbsolutePath()).isIdentity());
+        assertFalse(new Cipher(validKeyFile.getAbsolutePath()).isIdentity());
+    }
+
+    @Test
+    public void testRekeyTableComposesOldAndNewKey() throws IOException {
+        File newKeyFile = tempDir.resolve("new_key.txt").toFile();
+        try (FileWriter writer = new FileWriter(newKeyFile)) {
+            writer.write("abcdefghijklmnopqrstuvwxyz\n");
+            writer.write("zyxwvutsrqponmlkjihgfedcba\n");
+        }
+        Cipher oldKey = new Cipher(validKeyFile.getAbsolutePath());
+        Cipher newKey = new Cipher(newKeyFile.getAbsolutePath());
+        char[] table = oldKey.rekeyTable(newKey);
+
+        StringBuilder rekeyed = new StringBuilder();
+        for (char c : "Ifmmp3, xpsme".toCharArray()) {
+            rekeyed.append(c < table.length ? table[c] : c);
+        }
+        assertEquals("Hello2, world", newKey.decipher(rekeyed.toString()));
+    }
+
     @Test
     public void testAlternativeKeyFile() throws IOException {
         File altKeyFile = tempDir.resolve("alternative_key.txt").toFile();
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.DisplayName;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.channels.WritableByteChannel;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -117,12 +118,132 @@ class CommandLineInterfaceTest {
         tearDown();
     }
 
+    @Test
+    @DisplayName("--verify prints contents and verification result")
+    void testVerifyPrintsResult() {
+        cli.run(new String[]{"--verify", "01", "key.txt"});
+        assertEquals("01", mockController.lastFileNumber);
+        assertEquals("key.txt", mockController.lastKeyPath);
+        String output = outputStream.toString();
+        assertTrue(output.contains("Verified contents"));
+        assertTrue(output.contains("Verified: test.txt (SHA-256 OK)"));
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--verify without file number prints usage")
+    void testVerifyWithoutNumberPrintsUsage() {
+        cli.run(new String[]{"--verify"});
+        assertTrue(errorStream.toString().contains("Usage"));
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--rekey passes both keys to controller")
+    void testRekeyCallsController() {
+        cli.run(new String[]{"--rekey", "old.txt", "new.txt"});
+        assertEquals("old.txt new.txt", mockController.lastRekey);
+        assertEquals("Rekeyed 0 files", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--pack defaults to data.pack")
+    void testPackDefaultsContainerPath() {
+        cli.run(new String[]{"--pack"});
+        assertEquals("Packed into data.pack", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--ingest uses default key when none given")
+    void testIngestDefaultsKey() {
+        cli.run(new String[]{"--ingest", "plain"});
+        assertEquals("Ingested plain with ciphers/key.txt", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--mirror uses default key when none given")
+    void testMirrorDefaultsKey() {
+        cli.run(new String[]{"--mirror", "out"});
+        assertEquals("Mirrored out with ciphers/key.txt", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--mirror requires an output directory")
+    void testMirrorRequiresOutDir() {
+        cli.run(new String[]{"--mirror"});
+        assertTrue(errorStream.toString().contains("Usage"));
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--coordinate passes worker count, key and port")
+    void testCoordinateArguments() {
+        cli.run(new String[]{"--coordinate", "3", "out", "k.txt", "4000"});
+        assertEquals("Coordinated 3 workers into out with k.txt on 4000", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--coordinate passes a bind address after the port")
+    void testCoordinateBindAddress() {
+        cli.run(new String[]{"--coordinate", "0", "out", "k.txt", "4000", "0.0.0.0"});
+        assertEquals("Coordinated 0 workers into out with k.txt on 0.0.0.0:4000", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--coordinate defaults key and port")
+    void testCoordinateDefaults() {
+        cli.run(new String[]{"--coordinate", "2", "out"});
+        assertEquals("Coordinated 2 workers into out with ciphers/key.txt on 0", outputStream.toString().trim());
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--worker requires a numeric port")
+    void testWorkerRequiresPort() {
+        cli.run(new String[]{"--worker", "localhost", "port"});
+        assertTrue(errorStream.toString().contains("Usage"));
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--verbose prints contents and reports the engine on stderr")
+    void testVerboseReportsEngine() {
+        cli.run(new String[]{"--verbose", "01", "k.txt"});
+        assertEquals("Engine contents", outputStream.toString().trim());
+        assertEquals("Engine: scalar for 15 chars (ASCII key, 1 core, default thresholds)", errorStream.toString().trim());
+        assertEquals("k.txt", mockController.lastKeyPath);
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--calibrate takes no arguments")
+    void testCalibrateRejectsArguments() {
+        cli.run(new String[]{"--calibrate", "extra"});
+        assertTrue(errorStream.toString().contains("Usage"));
+        tearDown();
+    }
+
+    @Test
+    @DisplayName("--compile-key requires key and output paths")
+    void testCompileKeyRequiresTwoPaths() {
+        cli.run(new String[]{"--compile-key", "key.txt"});
+        assertTrue(errorStream.toString().contains("Usage"));
+        tearDown();
+    }
+
     private static class MockProgramController extends ProgramController {
         boolean listFilesCalled = false;
         boolean getFileContentsCalled = false;
         boolean getFileContentsWithKeyCalled = false;
         String lastFileNumber = null;
         String lastKeyPath = null;
+        String lastRekey = null;
         String listFilesResult = "01 test.txt";
         String getFileContentsResult = "Test contents";
         String getFileContentsWithKeyResult = "Test contents with key";
@@ -160,5 +281,58 @@ class CommandLineInterfaceTest {
             if (shouldThrowException) throw new RuntimeException(exceptionMessage);
             return getFileContentsWithKeyResult;
         }
+
+        @Override
+        public String rekeyDataFiles(String oldKeyPath, String newKeyPath) {
+            lastRekey = oldKeyPath + " " + newKeyPath;
+            return "Rekeyed 0 files";
+        }
+
+        @Override
+        public String writeOrGetFileContents(String fileNumber, String keyPath, WritableByteChannel out) {
+            return keyPath == null ? getFileContents(fileNumber) : getFileContents(fileNumber, keyPath);
+        }
+
+        @Override
+        public String ingestFiles(String sourceDir, String keyPath) {
+            return "Ingested " + sourceDir + " with " + keyPath;
+        }
+
+        @Override
+        public String mirrorDataFiles(String outDir, String keyPath) {
+            return "Mirrored " + outDir + " with " + keyPath;
+        }
+
+        @Override
+        public String coordinateDataFiles(int localWorkers, String outDir, String keyPath, String bindAddress,
+                                          int port) {
+            return "Coordinated " + localWorkers + " workers into " + outDir + " with " + keyPath + " on "
+                    + (bindAddress == null ? "" : bindAddress + ":") + port;
+        }
+
+        @Override
+        public EngineContents getFileContentsWithEngine(String fileNumber, String keyPath) {
+            lastFileNumber = fileNumber;
+            lastKeyPath = keyPath;
+            return new EngineContents("Engine contents", "scalar for 15 chars (ASCII key, 1 core, default thresholds)");
+        }
+
+        @Override
+        public String calibrateEngines() {
+            return "Calibrated";
+        }
+
+        @Override
+        public String packDataFiles(String containerPath) {
+            return "Packed into " + containerPath;
+        }
+
+        @Override
+        public VerifiedContents getVerifiedFileContents(String fileNumber, String keyPath) {
+            lastFileNumber = fileNumber;
+            lastKeyPath = keyPath;
+            if (shouldThrowException) throw new RuntimeException(exceptionMessage);
+            return new VerifiedContents("test.txt", IntegrityCheck.Algorithm.SHA_256, "Verified contents");
+        }
     }
 }
@@ -0,0 +1,270 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for Coordinator sharding, local worker processes and shard reassignment
+class CoordinatorTest {
+    private static final String TOKEN = "test-token";
+
+    @TempDir
+    Path tempDir;
+
+    private File projectDataDir;
+    private File outDir;
+    private File keyFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectDataDir = new File("data");
+        if (!projectDataDir.exists()) {
+            projectDataDir.mkdirs();
+        }
+        outDir = tempDir.resolve("plain").toFile();
+        keyFile = tempDir.resolve("key.txt").toFile();
+        writeFile(keyFile, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890\n"
+                + "bcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890a\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = projectDataDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isFile()) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private void writeFile(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    private void writeDataFiles(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            writeFile(new File(projectDataDir, "file" + (char) ('a' + i) + ".txt"), "Ifmmp " + (char) ('b' + i) + "\n");
+        }
+    }
+
+    private void assertOutputs(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            assertEquals("Hello " + (char) ('a' + i) + "\n",
+                    Files.readString(new File(outDir, "file" + (char) ('a' + i) + ".txt").toPath()));
+        }
+        assertEquals(count, outDir.list().length);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("127.0.0.1", port);
+            } catch (ConnectException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    // Passes the handshake and reads one shard like a worker would, without answering
+    private static List<String> takeShard(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        Worker.handshake(in, new DataOutputStream(socket.getOutputStream()), TOKEN);
+        in.readInt();
+        List<String> names = new ArrayList<>();
+        for (int n = in.readInt(); n > 0; n--) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    @Test
+    @DisplayName("shard balances bytes and keeps every file exactly once in listing order")
+    void testShardBalancesBytes() {
+        long[] sizes = {100, 1, 1, 1, 50, 50, 3};
+        List<List<Integer>> shards = Coordinator.shard(sizes, 2);
+
+        assertEquals(2, shards.size());
+        List<Integer> seen = new ArrayList<>();
+        long[] totals = new long[2];
+        for (int s = 0; s < 2; s++) {
+            List<Integer> shard = shards.get(s);
+            for (int i = 1; i < shard.size(); i++) {
+                assertTrue(shard.get(i - 1) < shard.get(i));
+            }
+            for (int file : shard) {
+                totals[s] += sizes[file];
+                seen.add(file);
+            }
+        }
+        seen.sort(null);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), seen);
+        assertTrue(Math.abs(totals[0] - totals[1]) <= 3);
+        assertEquals(1, Coordinator.shard(new long[]{5}, 8).size());
+        assertTrue(Coordinator.shard(new long[0], 4).isEmpty());
+    }
+
+    @Test
+    @DisplayName("local worker processes decipher every file into the output directory")
+    void testLocalWorkerProcesses() throws IOException {
+        writeDataFiles(5);
+
+        String summary = new Coordinator(new FileHandler()).coordinate(2, outDir.getPath(), keyFile.getPath(), null, 0, null);
+
+        assertOutputs(5);
+        // Tiny shards may all be done before the second JVM connects, so only the first worker is certain
+        assertTrue(summary.startsWith("Deciphered 5 files (40 bytes) into " + outDir.getPath() + " in 5 shards"),
+                summary);
+        assertTrue(summary.contains("\n  worker 1: "), summary);
+    }
+
+    @Test
+    @DisplayName("a shard from a worker that disconnects is handed to another worker")
+    void testDeadWorkerShardReassigned() throws Exception {
+        writeDataFiles(5);
+        int port = freePort();
+        CompletableFuture<String> run = CompletableFuture.supplyAsync(
+                () -> new Coordinator(new FileHandler()).coordinate(0, outDir.getPath(), keyFile.getPath(), null, port, TOKEN));
+
+        try (Socket dead = connect(port)) {
+            assertFalse(takeShard(dead).isEmpty());
+        }
+        String worker = new Worker(new FileHandler()).run("127.0.0.1", port, TOKEN);
+
+        String summary = run.get(30, TimeUnit.SECONDS);
+        assertEquals("Worker processed 4 shards (5 files)", worker);
+        assertOutputs(5);
+        assertTrue(summary.contains("\n  worker 1: 0 shards"), summary);
+    }
+
+    @Test
+    @DisplayName("an idle worker steals a copy of a straggler's shard")
+    void testStragglerShardStolen() throws Exception {
+        writeDataFiles(5);
+        int port = freePort();
+        CompletableFuture<String> run = CompletableFuture.supplyAsync(
+                () -> new Coordinator(new FileHandler()).coordinate(0, outDir.getPath(), keyFile.getPath(), null, port, TOKEN));
+
+        try (Socket straggler = connect(port)) {
+            takeShard(straggler);
+            String worker = new Worker(new FileHandler()).run("127.0.0.1", port, TOKEN);
+
+            String summary = run.get(30, TimeUnit.SECONDS);
+            assertEquals("Worker processed 4 shards (5 files)", worker);
+            assertOutputs(5);
+            assertTrue(summary.contains("(1 reissued, 0 duplicate results discarded)"), summary);
+            assertTrue(summary.contains("\n  worker 1: 0 shards"), summary);
+        }
+    }
+
+    @Test
+    @DisplayName("an output that cannot be moved into place fails the run")
+    void testRenameFailureFailsRun() throws Exception {
+        writeDataFiles(2);
+        // A non-empty directory where an output belongs cannot be replaced
+        File blocker = new File(outDir, "filea.txt");
+        blocker.mkdirs();
+        writeFile(new File(blocker, "keep"), "x");
+        int port = freePort();
+        CompletableFuture<String> run = CompletableFuture.supplyAsync(
+                () -> new Coordinator(new FileHandler()).coordinate(0, outDir.getPath(), keyFile.getPath(), null, port, TOKEN));
+
+        connect(port).close();
+        new Worker(new FileHandler()).run("127.0.0.1", port, TOKEN);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> run.get(30, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("unable to write output"), e.getCause().getMessage());
+    }
+
+    @Test
+    @DisplayName("coordinate needs a local worker or a port")
+    void testRequiresWorkers() throws IOException {
+        writeDataFiles(1);
+        assertThrows(RuntimeException.class,
+                () -> new Coordinator(new FileHandler()).coordinate(0, outDir.getPath(), keyFile.getPath(), null, 0, TOKEN));
+    }
+
+    @Test
+    @DisplayName("coordinate refuses to write into data/")
+    void testRejectsDataDirectory() throws IOException {
+        writeDataFiles(1);
+        assertThrows(RuntimeException.class, () -> new Coordinator(new FileHandler())
+                .coordinate(1, FileHandler.DATA_DIR, keyFile.getPath(), null, 0, TOKEN));
+        assertEquals("Ifmmp b\n", Files.readString(new File(projectDataDir, "filea.txt").toPath()));
+    }
+
+    @Test
+    @DisplayName("a worker with the wrong token is dropped and never counted as a worker")
+    void testWrongTokenRejected() throws Exception {
+        writeDataFiles(3);
+        int port = freePort();
+        CompletableFuture<String> run = CompletableFuture.supplyAsync(
+                () -> new Coordinator(new FileHandler()).coordinate(0, outDir.getPath(), keyFile.getPath(), null, port, TOKEN));
+
+        connect(port).close();
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> new Worker(new FileHandler()).run("127.0.0.1", port, "wrong-token"));
+        assertTrue(e.getMessage().contains(Coordinator.TOKEN_ENV), e.getMessage());
+        new Worker(new FileHandler()).run("127.0.0.1", port, TOKEN);
+
+        String summary = run.get(30, TimeUnit.SECONDS);
+        assertOutputs(3);
+        assertTrue(summary.contains(" on 1 workers "), summary);
+    }
+
+    @Test
+    @DisplayName("listening on a port needs a shared token")
+    void testPortRequiresToken() throws IOException {
+        writeDataFiles(1);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> new Coordinator(new FileHandler())
+                .coordinate(0, outDir.getPath(), keyFile.getPath(), null, freePort(), null));
+        assertTrue(e.getMessage().contains(Coordinator.TOKEN_ENV));
+    }
+
+    @Test
+    @DisplayName("a file larger than one chunk is streamed intact, including multi-byte characters")
+    void testLargeFileStreamed() throws Exception {
+        writeFile(new File(projectDataDir, "big.txt"), "Ifmmp \u00e9\u4e16 ".repeat(30_000));
+        int port = freePort();
+        CompletableFuture<String> run = CompletableFuture.supplyAsync(
+                () -> new Coordinator(new FileHandler()).coordinate(0, outDir.getPath(), keyFile.getPath(), null, port, TOKEN));
+
+        connect(port).close();
+        assertEquals("Worker processed 1 shards (1 files)", new Worker(new FileHandler()).run("127.0.0.1", port, TOKEN));
+
+        run.get(30, TimeUnit.SECONDS);
+        assertEquals("Hello \u00e9\u4e16 ".repeat(30_000),
+                Files.readString(new File(outDir, "big.txt").toPath(), StandardCharsets.UTF_8));
+    }
+}
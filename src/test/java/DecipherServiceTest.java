@@ -0,0 +1,251 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for DecipherService async results, streaming and caching
+class DecipherServiceTest {
+    @TempDir
+    Path tempDir;
+
+    private File projectDataDir;
+    private File keyFile;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectDataDir = new File("data");
+        if (!projectDataDir.exists()) {
+            projectDataDir.mkdirs();
+        }
+        keyFile = tempDir.resolve("key.txt").toFile();
+        try (FileWriter writer = new FileWriter(keyFile)) {
+            writer.write("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890\n");
+            writer.write("bcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890a\n");
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        File[] files = projectDataDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isFile()) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private void createTestDataFile(String filename, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(new File(projectDataDir, filename))) {
+            writer.write(content);
+        }
+    }
+
+    private DecipherService newService(int chunkSize) {
+        return new DecipherService(new FileHandler(), executor, chunkSize);
+    }
+
+    @Test
+    @DisplayName("listFiles completes with formatted list")
+    void testListFilesMatchesController() throws Exception {
+        createTestDataFile("filea.txt", "b");
+        createTestDataFile("fileb.txt", "c");
+        String result = newService(16).listFiles().get(5, TimeUnit.SECONDS);
+        assertEquals(new ProgramController().listFiles(), result);
+    }
+
+    @Test
+    @DisplayName("getFileContents completes with deciphered text")
+    void testGetFileContentsDeciphers() throws Exception {
+        createTestDataFile("filea.txt", "Ifmmp");
+        String result = newService(16).getFileContents("01", keyFile.getAbsolutePath()).get(5, TimeUnit.SECONDS);
+        assertEquals("Hello\n", result);
+    }
+
+    @Test
+    @DisplayName("getFileContents completes exceptionally for bad file number")
+    void testGetFileContentsOutOfRange() throws IOException {
+        createTestDataFile("filea.txt", "b");
+        CompletableFuture<String> future = newService(16).getFileContents("99", keyFile.getAbsolutePath());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("out of range"));
+    }
+
+    @Test
+    @DisplayName("Concurrent callers share one cached cipher")
+    void testConcurrentCallersShareCipher() throws Exception {
+        createTestDataFile("filea.txt", "Ifmmp");
+        createTestDataFile("fileb.txt", "Xpsme");
+        DecipherService service = newService(16);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(service.getFileContents(i % 2 == 0 ? "01" : "02", keyFile.getAbsolutePath()));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i % 2 == 0 ? "Hello\n" : "World\n", futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertSame(service.cipherFor(keyFile.getAbsolutePath()), service.cipherFor(keyFile.getAbsolutePath()));
+    }
+
+    @Test
+    @DisplayName("streamFileContents honours subscriber demand")
+    void testStreamHonoursDemand() throws Exception {
+        createTestDataFile("filea.txt", "Ifmmp Xpsme");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newService(4).streamFileContents("01", keyFile.getAbsolutePath()).subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        Thread.sleep(200);
+        assertEquals(1, subscriber.chunks.size());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals("Hello World\n", subscriber.completed.get(5, TimeUnit.SECONDS));
+        assertEquals(3, subscriber.chunks.size());
+    }
+
+    @Test
+    @DisplayName("streamed chunks join to the same text as getFileContents, line endings included")
+    void testStreamMatchesGetFileContents() throws Exception {
+        createTestDataFile("filea.txt", "Ifmmp\r\nXpsme\rJu\u2028jt ".repeat(500) + "mbtu");
+        DecipherService service = newService(7);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.streamFileContents("01", keyFile.getAbsolutePath()).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(service.getFileContents("01", keyFile.getAbsolutePath()).get(5, TimeUnit.SECONDS),
+                subscriber.completed.get(5, TimeUnit.SECONDS));
+        for (String chunk : subscriber.chunks) {
+            assertTrue(chunk.length() <= 7, chunk);
+        }
+    }
+
+    @Test
+    @DisplayName("a chunk cannot be rewound or cleared into earlier chunks")
+    void testStreamChunksAreIsolated() throws Exception {
+        createTestDataFile("filea.txt", "Ifmmp Xpsme");
+        List<CharBuffer> buffers = new ArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        newService(4).streamFileContents("01", keyFile.getAbsolutePath()).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(CharBuffer item) {
+                buffers.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get(5, TimeUnit.SECONDS);
+
+        CharBuffer second = buffers.get(1);
+        assertTrue(second.isReadOnly());
+        assertEquals("o Wo", second.clear().toString());
+        assertEquals("o Wo", second.rewind().toString());
+    }
+
+    @Test
+    @DisplayName("streamFileContents signals errors to subscriber")
+    void testStreamSignalsError() throws Exception {
+        createTestDataFile("filea.txt", "b");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newService(4).streamFileContents("99", keyFile.getAbsolutePath()).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> subscriber.completed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains("out of range"));
+    }
+
+    @Test
+    @DisplayName("a non-positive request ends the stream with IllegalArgumentException after pending chunks")
+    void testStreamRejectsNonPositiveRequest() throws Exception {
+        createTestDataFile("filea.txt", "Ifmmp Xpsme");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newService(4).streamFileContents("01", keyFile.getAbsolutePath()).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        subscriber.subscription.request(0);
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> subscriber.completed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Thread.sleep(200);
+        assertTrue(subscriber.chunks.size() <= 2);
+        assertEquals(1, subscriber.signals.get());
+    }
+
+    @Test
+    @DisplayName("the default service runs on its own I/O threads")
+    void testDefaultExecutor() throws Exception {
+        createTestDataFile("filea.txt", "b");
+        assertEquals(new ProgramController().listFiles(), new DecipherService().listFiles().get(5, TimeUnit.SECONDS));
+        // Idle I/O threads live for a minute, so the one that ran the listing is still there
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(t -> t.getName().startsWith("decipher-io-") && t.isDaemon()));
+    }
+
+    // Collects chunks and completes a future with the joined text
+    private static class RecordingSubscriber implements Flow.Subscriber<CharBuffer> {
+        final List<String> chunks = new ArrayList<>();
+        final CompletableFuture<String> completed = new CompletableFuture<>();
+        volatile Flow.Subscription subscription;
+        // onError and onComplete calls; a stream may end only once
+        final AtomicInteger signals = new AtomicInteger();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public synchronized void onNext(CharBuffer item) {
+            chunks.add(item.toString());
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            signals.incrementAndGet();
+            completed.completeExceptionally(throwable);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            signals.incrementAndGet();
+            completed.complete(String.join("", chunks));
+        }
+    }
+}
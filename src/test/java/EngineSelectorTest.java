@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Tests for DecipherEngine equivalence and EngineSelector thresholds and calibration cache
+class EngineSelectorTest {
+    @TempDir
+    Path tempDir;
+
+    private static final DecipherEngine[] ENGINES = {
+            DecipherEngine.SCALAR, DecipherEngine.BYTE_TABLE, DecipherEngine.PARALLEL};
+
+    private static char[] shiftTable(int size) {
+        char[] table = new char[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = (char) ((i + 1) % size);
+        }
+        return table;
+    }
+
+    @Test
+    @DisplayName("every engine gives the scalar result, including chars past the table and non-Latin-1 text")
+    void testEnginesAgree() {
+        char[] ascii = shiftTable(128);
+        String[] inputs = {
+                "", "Ifmmp, Xpsme? 42", "caf\u00e9 \u00ff ?? \u20ac \ud83d\ude00 end",
+                "abc?".repeat(50_000), "x\u4e16".repeat(100_000)};
+        for (String input : inputs) {
+            String expected = DecipherEngine.SCALAR.decipher(input, ascii);
+            for (DecipherEngine engine : ENGINES) {
+                assertEquals(expected, engine.decipher(input, ascii), engine.name());
+            }
+        }
+
+        char[] wide = shiftTable(0xE000);
+        String input = "\u4e16\ud83d\ude00 a".repeat(40_000);
+        assertEquals(DecipherEngine.SCALAR.decipher(input, wide), DecipherEngine.PARALLEL.decipher(input, wide));
+    }
+
+    @Test
+    @DisplayName("parallel runs its chunks on its own daemon threads, not the common pool")
+    void testParallelUsesDedicatedPool() {
+        assumeTrue(Runtime.getRuntime().availableProcessors() > 1);
+        char[] ascii = shiftTable(128);
+        String input = "abc?".repeat(100_000);
+        assertEquals(DecipherEngine.SCALAR.decipher(input, ascii), DecipherEngine.PARALLEL.decipher(input, ascii));
+        // Idle pool threads live for a minute, so the ones that ran the chunks are still there
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(t -> t.getName().startsWith("decipher-parallel-") && t.isDaemon()));
+    }
+
+    @Test
+    @DisplayName("select uses byte-table for ASCII keys and parallel past its threshold on multi-core")
+    void testSelectByThresholds() {
+        EngineSelector selector = new EngineSelector(4, 1000, new int[]{100_000, 50_000, 20_000}, false);
+
+        assertSame(DecipherEngine.SCALAR, selector.select(999, DecipherEngine.Alphabet.ASCII));
+        assertSame(DecipherEngine.BYTE_TABLE, selector.select(1000, DecipherEngine.Alphabet.ASCII));
+        assertSame(DecipherEngine.SCALAR, selector.select(10_000, DecipherEngine.Alphabet.BMP));
+        assertSame(DecipherEngine.PARALLEL, selector.select(100_000, DecipherEngine.Alphabet.ASCII));
+        assertSame(DecipherEngine.PARALLEL, selector.select(50_000, DecipherEngine.Alphabet.BMP));
+        assertSame(DecipherEngine.PARALLEL, selector.select(20_000, DecipherEngine.Alphabet.SUPPLEMENTARY));
+
+        EngineSelector singleCore = new EngineSelector(1, 1000, new int[]{0, 0, 0}, false);
+        assertSame(DecipherEngine.BYTE_TABLE, singleCore.select(5000, DecipherEngine.Alphabet.ASCII));
+        assertEquals("byte-table for 5000 chars (ASCII key, 1 core, default thresholds)",
+                singleCore.describe(5000, DecipherEngine.Alphabet.ASCII));
+    }
+
+    @Test
+    @DisplayName("crossover is the smallest size from which the engine keeps winning")
+    void testCrossover() {
+        int[] sizes = {10, 100, 1000, 10_000};
+        assertEquals(1000, EngineSelector.crossover(sizes, new boolean[]{true, false, true, true}));
+        assertEquals(10, EngineSelector.crossover(sizes, new boolean[]{true, true, true, true}));
+        assertEquals(Integer.MAX_VALUE, EngineSelector.crossover(sizes, new boolean[]{true, true, true, false}));
+    }
+
+    @Test
+    @DisplayName("calibrated thresholds survive a save and load; a stale or broken cache falls back to defaults")
+    void testCalibrationCache() throws IOException {
+        EngineSelector calibrated = EngineSelector.calibrate(new int[]{256, 4096});
+        Path cache = tempDir.resolve("calibration");
+        calibrated.save(cache);
+
+        EngineSelector loaded = EngineSelector.load(cache);
+        assertEquals(calibrated.thresholds(), loaded.thresholds());
+        assertTrue(loaded.describe(10, DecipherEngine.Alphabet.BMP).endsWith("calibrated thresholds)"));
+
+        Files.writeString(cache, Files.readString(cache).replaceAll("cores=\\d+", "cores=9999"));
+        assertEquals(EngineSelector.defaults().thresholds(), EngineSelector.load(cache).thresholds());
+        Files.writeString(cache, "byteTableMin=oops\n");
+        assertEquals(EngineSelector.defaults().thresholds(), EngineSelector.load(cache).thresholds());
+        assertEquals(EngineSelector.defaults().thresholds(), EngineSelector.load(tempDir.resolve("missing")).thresholds());
+    }
+}
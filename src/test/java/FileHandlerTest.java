@@ -7,11 +7,13 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 // Tests for FileHandler file listing and reading
 class FileHandlerTest {
@@ -137,4 +139,91 @@ class FileHandlerTest {
     void testReadDataFileHandlesMissingFile() {
         assertThrows(RuntimeException.class, () -> fileHandler.readDataFile("nonexistent.txt"));
     }
+
+    @Test
+    @DisplayName("Packed container lists and reads the same as data/")
+    void testPackedContainerMatchesLooseDirectory() throws IOException {
+        createTestFile("fileb.txt", "Second\r\nfile");
+        createTestFile("filea.txt", "First file\n");
+        createTestFile("empty.txt", "");
+        String containerPath = tempDir.resolve("data.pack").toString();
+        fileHandler.packDataFiles(containerPath);
+
+        FileHandler packed = new FileHandler(DataContainer.open(containerPath));
+        assertEquals(fileHandler.listDataFiles(), packed.listDataFiles());
+        for (String name : fileHandler.listDataFiles()) {
+            assertEquals(fileHandler.readDataFile(name), packed.readDataFile(name));
+        }
+    }
+
+    @Test
+    @DisplayName("Packed container rejects missing and corrupt entries")
+    void testPackedContainerRejectsBadEntries() throws IOException {
+        createTestFile("filea.txt", "content");
+        Path container = tempDir.resolve("data.pack");
+        fileHandler.packDataFiles(container.toString());
+
+        FileHandler packed = new FileHandler(DataContainer.open(container.toString()));
+        assertThrows(RuntimeException.class, () -> packed.readDataFile("missing.txt"));
+        assertThrows(IllegalArgumentException.class, () -> packed.readDataFile("../filea.txt"));
+
+        byte[] bytes = Files.readAllBytes(container);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(container, bytes);
+        FileHandler corrupted = new FileHandler(DataContainer.open(container.toString()));
+        assertThrows(RuntimeException.class, () -> corrupted.readDataFile("filea.txt"));
+    }
+
+    @Test
+    @DisplayName("translateFile handles multi-byte characters across buffer boundaries")
+    void testTranslateFileAcrossBufferBoundaries() throws IOException {
+        // Enough text to span several pooled buffers, with 2, 3 and 4 byte UTF-8 sequences
+        String text = "abc \u00e9\u20ac\ud83d\ude00 xyz\n".repeat(20_000);
+        File source = tempDir.resolve("source.txt").toFile();
+        File target = tempDir.resolve("target.txt").toFile();
+        Files.writeString(source.toPath(), text, StandardCharsets.UTF_8);
+        char[] table = new char['c' + 1];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (char) i;
+        }
+        table['a'] = 'c';
+        table['c'] = 'a';
+
+        FileHandler.translateFile(source, target, table);
+
+        assertEquals(text.replace('a', '#').replace('c', 'a').replace('#', 'c'),
+                Files.readString(target.toPath(), StandardCharsets.UTF_8));
+        assertEquals(0, BufferPool.shared().outstanding());
+    }
+
+    @Test
+    @DisplayName("translateFile rejects malformed UTF-8 and releases its buffers")
+    void testTranslateFileRejectsMalformedInput() throws IOException {
+        File source = tempDir.resolve("bad.txt").toFile();
+        Files.write(source.toPath(), new byte[]{'o', 'k', (byte) 0xC3});
+        File target = tempDir.resolve("out.txt").toFile();
+        assertThrows(IOException.class, () -> FileHandler.translateFile(source, target, new char[0]));
+        assertEquals(0, BufferPool.shared().outstanding());
+    }
+
+    @Test
+    @DisplayName("translateFile allocation does not grow with file size")
+    void testTranslateFileAllocationIsConstant() throws IOException {
+        assumeTrue(ThreadAllocation.allocatedBytes() >= 0, "Thread allocation measurement not supported");
+        File source = tempDir.resolve("big.txt").toFile();
+        File target = tempDir.resolve("big.out").toFile();
+        Files.writeString(source.toPath(), "Uijt jt b tfdsfu nfttbhf.\n".repeat(200_000), StandardCharsets.US_ASCII);
+        char[] table = new char[128];
+
+        // Warm up the pool, decoders and JIT before measuring
+        for (int i = 0; i < 3; i++) {
+            FileHandler.translateFile(source, target, table);
+        }
+        long before = ThreadAllocation.allocatedBytes();
+        FileHandler.translateFile(source, target, table);
+        long allocated = ThreadAllocation.allocatedBytes() - before;
+
+        // A 5 MB file; a heap-buffered copy would allocate megabytes
+        assertTrue(allocated < 64 * 1024, "translateFile allocated " + allocated + " bytes");
+    }
 }
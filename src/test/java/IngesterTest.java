@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for Ingester enciphering plaintext into data/
+class IngesterTest {
+    @TempDir
+    Path tempDir;
+
+    private File projectDataDir;
+    private File sourceDir;
+    private File keyFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectDataDir = new File("data");
+        if (!projectDataDir.exists()) {
+            projectDataDir.mkdirs();
+        }
+        sourceDir = tempDir.resolve("plain").toFile();
+        sourceDir.mkdirs();
+        keyFile = tempDir.resolve("key.txt").toFile();
+        writeFile(keyFile, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890\n"
+                + "bcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890a\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = projectDataDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isFile()) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private void writeFile(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    @Test
+    @DisplayName("ingest enciphers files that decipher back to the original")
+    void testIngestRoundTrip() throws IOException {
+        writeFile(new File(sourceDir, "filea.txt"), "This is a secret message.\nMeet at 12.\n");
+        writeFile(new File(sourceDir, "fileb.txt"), "Caf\u00e9, 100%!\n");
+
+        String summary = new Ingester(new FileHandler(), 2).ingest(sourceDir.getPath(), keyFile.getPath());
+
+        assertEquals("Ingested 2 files into data", summary);
+        assertEquals("Uijt jt b tfdsfu nfttbhf.\nNffu bu 23.\n",
+                Files.readString(new File(projectDataDir, "filea.txt").toPath(), StandardCharsets.UTF_8));
+        ProgramController controller = new ProgramController();
+        assertEquals("This is a secret message.\nMeet at 12.\n", controller.getFileContents("01", keyFile.getPath()));
+        // Ingest writes UTF-8; read it back explicitly so the check does not depend on the platform charset
+        String enciphered = Files.readString(new File(projectDataDir, "fileb.txt").toPath(), StandardCharsets.UTF_8);
+        assertEquals("Caf\u00e9, 100%!\n", new Cipher(keyFile.getPath()).decipher(enciphered));
+    }
+
+    @Test
+    @DisplayName("ingest replaces an existing data file")
+    void testIngestReplacesExistingFile() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "old");
+        writeFile(new File(sourceDir, "filea.txt"), "new\n");
+
+        new Ingester(new FileHandler(), 1).ingest(sourceDir.getPath(), keyFile.getPath());
+
+        assertEquals("new\n", new ProgramController().getFileContents("01", keyFile.getPath()));
+        assertFalse(new File(Ingester.WORK_DIR).exists());
+    }
+
+    @Test
+    @DisplayName("ingest refuses a key that cannot round-trip")
+    void testIngestRejectsNonRoundTripKey() throws IOException {
+        writeFile(new File(sourceDir, "filea.txt"), "abc\n");
+        File badKey = tempDir.resolve("bad.txt").toFile();
+        writeFile(badKey, "abc\nxyz\n");
+
+        assertThrows(RuntimeException.class, () -> new Ingester(new FileHandler(), 1).ingest(sourceDir.getPath(), badKey.getPath()));
+        assertFalse(new File(projectDataDir, "filea.txt").exists());
+    }
+
+    @Test
+    @DisplayName("ingest reports a missing source directory")
+    void testIngestMissingSourceDirectory() {
+        assertThrows(RuntimeException.class,
+                () -> new Ingester(new FileHandler(), 1).ingest(tempDir.resolve("missing").toString(), keyFile.getPath()));
+    }
+
+    @Test
+    @DisplayName("ingest refuses a packed repo instead of creating data/ over it")
+    void testIngestRejectsPackedRepo() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "Ifmmp\n");
+        String containerPath = tempDir.resolve("data.pack").toString();
+        new FileHandler().packDataFiles(containerPath);
+        writeFile(new File(sourceDir, "filez.txt"), "new\n");
+
+        FileHandler packed = new FileHandler(DataContainer.open(containerPath));
+        assertThrows(RuntimeException.class,
+                () -> new Ingester(packed, 1).ingest(sourceDir.getPath(), keyFile.getPath()));
+        assertFalse(new File(projectDataDir, "filez.txt").exists());
+    }
+}
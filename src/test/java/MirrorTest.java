@@ -0,0 +1,182 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for Mirror keeping a deciphered copy of data/ up to date
+class MirrorTest {
+    @TempDir
+    Path tempDir;
+
+    private File projectDataDir;
+    private File outDir;
+    private File keyFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectDataDir = new File("data");
+        if (!projectDataDir.exists()) {
+            projectDataDir.mkdirs();
+        }
+        outDir = tempDir.resolve("plain").toFile();
+        keyFile = tempDir.resolve("key.txt").toFile();
+        writeFile(keyFile, "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890\n"
+                + "bcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890a\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = projectDataDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isFile()) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private void writeFile(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    private String readOutput(String name) throws IOException {
+        return Files.readString(new File(outDir, name).toPath(), StandardCharsets.UTF_8);
+    }
+
+    private String mirror() {
+        return new Mirror(new FileHandler(), 2).mirror(outDir.getPath(), keyFile.getPath());
+    }
+
+    @Test
+    @DisplayName("first run deciphers every file, second run changes nothing")
+    void testFirstRunThenNoOp() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "Uijt jt b tfdsfu!\r\nNffu bu 23.\n");
+        writeFile(new File(projectDataDir, "fileb.txt"), "!!! ... ???\n");
+
+        assertEquals("Mirrored 2 files into " + outDir.getPath() + " (2 updated, 0 unchanged, 0 removed)", mirror());
+        assertEquals("This is a secret!\r\nMeet at 12.\n", readOutput("filea.txt"));
+        assertEquals("!!! ... ???\n", readOutput("fileb.txt"));
+
+        long before = new File(outDir, "filea.txt").lastModified();
+        assertEquals("Mirrored 2 files into " + outDir.getPath() + " (0 updated, 2 unchanged, 0 removed)", mirror());
+        assertEquals(before, new File(outDir, "filea.txt").lastModified());
+    }
+
+    @Test
+    @DisplayName("modified and deleted data files are updated and removed")
+    void testModifiedAndDeletedFiles() throws IOException {
+        File a = new File(projectDataDir, "filea.txt");
+        File b = new File(projectDataDir, "fileb.txt");
+        writeFile(a, "Ifmmp\n");
+        writeFile(b, "Xpsme\n");
+        mirror();
+
+        writeFile(a, "Ifmmp bhbjo, mpohfs\n");
+        b.delete();
+
+        assertEquals("Mirrored 1 files into " + outDir.getPath() + " (1 updated, 0 unchanged, 1 removed)", mirror());
+        assertEquals("Hello again, longer\n", readOutput("filea.txt"));
+        assertFalse(new File(outDir, "fileb.txt").exists());
+    }
+
+    @Test
+    @DisplayName("only outputs actually removed are counted, and one that cannot be removed is retried")
+    void testRemovalCountsOnlySuccessfulDeletes() throws IOException {
+        File b = new File(projectDataDir, "fileb.txt");
+        File c = new File(projectDataDir, "filec.txt");
+        writeFile(new File(projectDataDir, "filea.txt"), "Ifmmp\n");
+        writeFile(b, "Xpsme\n");
+        writeFile(c, "Bhbjo\n");
+        mirror();
+
+        b.delete();
+        c.delete();
+        // fileb.txt's output is already gone; filec.txt's is now a directory that cannot be deleted
+        assertTrue(new File(outDir, "fileb.txt").delete());
+        File blocked = new File(outDir, "filec.txt");
+        assertTrue(blocked.delete());
+        assertTrue(new File(blocked, "inner").mkdirs());
+
+        RuntimeException e = assertThrows(RuntimeException.class, this::mirror);
+        assertTrue(e.getMessage().contains("filec.txt"), e.getMessage());
+
+        assertTrue(new File(blocked, "inner").delete());
+        assertEquals("Mirrored 1 files into " + outDir.getPath() + " (0 updated, 1 unchanged, 1 removed)", mirror());
+        assertFalse(blocked.exists());
+    }
+
+    @Test
+    @DisplayName("a touched file with the same content is not rewritten")
+    void testTouchedButUnchanged() throws IOException {
+        File a = new File(projectDataDir, "filea.txt");
+        writeFile(a, "Ifmmp\n");
+        mirror();
+
+        assertTrue(a.setLastModified(a.lastModified() + 5000));
+        assertEquals("Mirrored 1 files into " + outDir.getPath() + " (0 updated, 1 unchanged, 0 removed)", mirror());
+        // The manifest now records the new mtime, so the next run does not hash it again
+        assertEquals("Mirrored 1 files into " + outDir.getPath() + " (0 updated, 1 unchanged, 0 removed)", mirror());
+    }
+
+    @Test
+    @DisplayName("a different key regenerates every file")
+    void testKeyChangeRegenerates() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "bcd\n");
+        mirror();
+        assertEquals("abc\n", readOutput("filea.txt"));
+
+        writeFile(keyFile, "abcd\nabcd\n");
+        assertEquals("Mirrored 1 files into " + outDir.getPath() + " (1 updated, 0 unchanged, 0 removed)", mirror());
+        assertEquals("bcd\n", readOutput("filea.txt"));
+    }
+
+    @Test
+    @DisplayName("mirror refuses to write into data/")
+    void testRejectsDataDirectory() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "Ifmmp\n");
+        assertThrows(RuntimeException.class,
+                () -> new Mirror(new FileHandler(), 1).mirror(FileHandler.DATA_DIR, keyFile.getPath()));
+        assertEquals("Ifmmp\n", Files.readString(new File(projectDataDir, "filea.txt").toPath()));
+    }
+
+    @Test
+    @DisplayName("a missing output is regenerated even when its data file is unchanged")
+    void testMissingOutputRegenerated() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "Ifmmp\n");
+        mirror();
+        assertTrue(new File(outDir, "filea.txt").delete());
+
+        assertEquals("Mirrored 1 files into " + outDir.getPath() + " (1 updated, 0 unchanged, 0 removed)", mirror());
+        assertEquals("Hello\n", readOutput("filea.txt"));
+    }
+
+    @Test
+    @DisplayName("data files named like the manifest or a temp file are refused")
+    void testRejectsReservedNames() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "Ifmmp\n");
+        mirror();
+        String manifest = readOutput(Mirror.MANIFEST_NAME);
+
+        for (String reserved : new String[]{Mirror.MANIFEST_NAME, "filea.txt.mirror-tmp"}) {
+            File data = new File(projectDataDir, reserved);
+            writeFile(data, "Xpsme\n");
+            RuntimeException e = assertThrows(RuntimeException.class, this::mirror);
+            assertTrue(e.getMessage().contains(reserved));
+            assertTrue(data.delete());
+        }
+        assertEquals(manifest, readOutput(Mirror.MANIFEST_NAME));
+    }
+}
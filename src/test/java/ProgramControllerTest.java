@@ -4,10 +4,20 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.api.AfterEach;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -175,4 +185,153 @@ class ProgramControllerTest {
             }
         }
     }
+
+    // Writes a sha256sum-style manifest entry for a project data file
+    private File writeSha256Manifest(String filename, String hex) throws IOException {
+        File manifest = new File("data.sha256");
+        try (FileWriter writer = new FileWriter(manifest)) {
+            writer.write(hex + "  " + filename + "\n");
+        }
+        return manifest;
+    }
+
+    @Test
+    @DisplayName("getVerifiedFileContents accepts matching SHA-256")
+    void testVerifiedFileContentsMatchingChecksum() throws IOException {
+        createTestDataFile("filea.txt", "b\n");
+        // sha256 of "b\n"
+        File manifest = writeSha256Manifest("filea.txt",
+                "0263829989b6fd954f72baaf2fc64bc2e2f01d692d4de72986ea808f6e99813f");
+        try {
+            ProgramController.VerifiedContents result =
+                    controller.getVerifiedFileContents("01", defaultKeyFile.getPath());
+            assertEquals("a\n", result.getContents());
+            assertEquals("filea.txt", result.getFilename());
+            assertEquals(IntegrityCheck.Algorithm.SHA_256, result.getAlgorithm());
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("getVerifiedFileContents rejects mismatched checksum")
+    void testVerifiedFileContentsMismatch() throws IOException {
+        createTestDataFile("filea.txt", "corrupted\n");
+        File manifest = writeSha256Manifest("filea.txt",
+                "0263829989b6fd954f72baaf2fc64bc2e2f01d692d4de72986ea808f6e99813f");
+        try {
+            RuntimeException e = assertThrows(RuntimeException.class,
+                    () -> controller.getVerifiedFileContents("01", defaultKeyFile.getPath()));
+            assertTrue(e.getMessage().contains("Checksum mismatch"));
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("getVerifiedFileContents uses CRC32C manifest")
+    void testVerifiedFileContentsCrc32c() throws IOException {
+        createTestDataFile("filea.txt", "b\n");
+        CRC32C crc = new CRC32C();
+        crc.update("b\n".getBytes());
+        File manifest = new File("data.crc32c");
+        try (FileWriter writer = new FileWriter(manifest)) {
+            writer.write(String.format("%08x", crc.getValue()) + "  filea.txt\n");
+        }
+        try {
+            ProgramController.VerifiedContents result =
+                    controller.getVerifiedFileContents("01", defaultKeyFile.getPath());
+            assertEquals("a\n", result.getContents());
+            assertEquals(IntegrityCheck.Algorithm.CRC32C, result.getAlgorithm());
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("getVerifiedFileContents requires a manifest entry")
+    void testVerifiedFileContentsMissingEntry() throws IOException {
+        createTestDataFile("filea.txt", "b\n");
+        File manifest = writeSha256Manifest("other.txt", "00");
+        try {
+            assertThrows(RuntimeException.class,
+                    () -> controller.getVerifiedFileContents("01", defaultKeyFile.getPath()));
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    // Runs writeOrGetFileContents, returning what it wrote directly or null if it returned the contents instead
+    private String writeDirect(String fileNumber, String keyPath) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String contents = controller.writeOrGetFileContents(fileNumber, keyPath, Channels.newChannel(bytes));
+        if (contents != null) {
+            assertEquals(0, bytes.size());
+            assertEquals(controller.getFileContents(fileNumber, keyPath), contents);
+            return null;
+        }
+        return bytes.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    @DisplayName("writeOrGetFileContents copies files the key cannot change")
+    void testDirectWriteCopiesUnchangedFile() throws IOException {
+        createTestDataFile("filea.txt", "!!! ... ???\n--- +++");
+        assertEquals(controller.getFileContents("01"), writeDirect("01", defaultKeyFile.getPath()));
+    }
+
+    @Test
+    @DisplayName("writeOrGetFileContents deciphers files that need it instead of writing them")
+    void testDirectWriteDeclinesMappedFile() throws IOException {
+        createTestDataFile("filea.txt", "!!! b !!!\n");
+        createTestDataFile("fileb.txt", "!!!\r\n!!!\n");
+        createTestDataFile("filec.txt", "caf\u00e9\n");
+        assertNull(writeDirect("01", defaultKeyFile.getPath()));
+        assertNull(writeDirect("02", defaultKeyFile.getPath()));
+        assertNull(writeDirect("03", defaultKeyFile.getPath()));
+    }
+
+    @Test
+    @DisplayName("writeOrGetFileContents passes everything through an identity key")
+    void testDirectWriteWithIdentityKey() throws IOException {
+        createTestDataFile("filea.txt", "abc xyz\n");
+        createTestDataFile("fileb.txt", "abc\r\nxyz\n");
+        File identityKey = new File(projectCiphersDir, "identity_key.txt");
+        try (FileWriter writer = new FileWriter(identityKey)) {
+            writer.write("abcxyz\n");
+            writer.write("abcxyz\n");
+        }
+        try {
+            assertEquals("abc xyz\n", writeDirect("01", identityKey.getPath()));
+            // Carriage returns still take the normal path, which skips the table for an identity key
+            assertNull(writeDirect("02", identityKey.getPath()));
+        } finally {
+            identityKey.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("drainPool lets a running task finish and cancels queued ones")
+    void testDrainPoolWaitsForRunningTasks() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicBoolean finished = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> running = pool.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            finished.set(true);
+        });
+        Future<?> queued = pool.submit(() -> { });
+        started.await();
+
+        ProgramController.drainPool(pool, List.of(running, queued));
+
+        assertTrue(pool.isTerminated());
+        assertTrue(finished.get());
+        assertTrue(queued.isCancelled());
+    }
 }
@@ -0,0 +1,180 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Tests for Rekeyer fused key rotation and resume
+class RekeyerTest {
+    @TempDir
+    Path tempDir;
+
+    private File projectDataDir;
+    private File oldKey;
+    private File newKey;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectDataDir = new File("data");
+        if (!projectDataDir.exists()) {
+            projectDataDir.mkdirs();
+        }
+        oldKey = tempDir.resolve("old.txt").toFile();
+        writeFile(oldKey, "abcdefghijklmnopqrstuvwxyz\nbcdefghijklmnopqrstuvwxyza\n");
+        newKey = tempDir.resolve("new.txt").toFile();
+        writeFile(newKey, "abcdefghijklmnopqrstuvwxyz\nzyxwvutsrqponmlkjihgfedcba\n");
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (File dir : new File[]{projectDataDir, new File(Rekeyer.WORK_DIR)}) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (f.isFile()) {
+                        f.delete();
+                    }
+                }
+            }
+        }
+        new File(Rekeyer.WORK_DIR).delete();
+    }
+
+    private void writeFile(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    private String readDataFile(String name) throws IOException {
+        return Files.readString(new File(projectDataDir, name).toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("rekey re-enciphers files for the new key")
+    void testRekeyMatchesNewKey() throws IOException {
+        // "hello world" under the old key and under the new key
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp xpsme\n");
+        writeFile(new File(projectDataDir, "fileb.txt"), "Ifmmp, 42!\n");
+
+        String summary = new Rekeyer(new FileHandler(), 2).rekey(oldKey.getPath(), newKey.getPath());
+
+        assertEquals("Rekeyed 2 files", summary);
+        assertEquals("svool dliow\n", readDataFile("filea.txt"));
+        assertEquals("Ivool, 42!\n", readDataFile("fileb.txt"));
+        assertEquals("hello world\n", new Cipher(newKey.getPath()).decipher(readDataFile("filea.txt")));
+        assertFalse(new File(Rekeyer.WORK_DIR).exists());
+    }
+
+    @Test
+    @DisplayName("rekey resumes from the journal without rekeying twice")
+    void testRekeyResumesFromJournal() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp\n");
+        writeFile(new File(projectDataDir, "fileb.txt"), "xpsme\n");
+
+        // Simulate a run interrupted after filea.txt was journaled but before it was moved
+        File workDir = new File(Rekeyer.WORK_DIR);
+        workDir.mkdirs();
+        writeFile(new File(workDir, Rekeyer.JOURNAL_NAME),
+                "keys " + Rekeyer.keyIdentity(oldKey.getPath(), newKey.getPath()) + "\nfilea.txt\n");
+        writeFile(new File(workDir, "filea.txt.tmp"), "svool\n");
+
+        String summary = new Rekeyer(new FileHandler(), 2).rekey(oldKey.getPath(), newKey.getPath());
+
+        assertEquals("Rekeyed 1 files (1 resumed)", summary);
+        assertEquals("svool\n", readDataFile("filea.txt"));
+        assertEquals("dliow\n", readDataFile("fileb.txt"));
+    }
+
+    @Test
+    @DisplayName("rekey replaces manifest checksums with those of the rewritten files, including resumed ones")
+    void testRekeyUpdatesManifest() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp\n");
+        writeFile(new File(projectDataDir, "fileb.txt"), "xpsme\n");
+        File manifest = new File(IntegrityCheck.Algorithm.SHA_256.getManifestPath());
+        writeFile(manifest, "# before rotation\n"
+                + IntegrityCheck.sha256Hex("ifmmp\n".getBytes(StandardCharsets.UTF_8)) + "  filea.txt\n"
+                + IntegrityCheck.sha256Hex("xpsme\n".getBytes(StandardCharsets.UTF_8)) + " *fileb.txt\n");
+
+        // filea.txt was committed by an interrupted run, so its checksum has to be read back
+        File workDir = new File(Rekeyer.WORK_DIR);
+        workDir.mkdirs();
+        writeFile(new File(workDir, Rekeyer.JOURNAL_NAME),
+                "keys " + Rekeyer.keyIdentity(oldKey.getPath(), newKey.getPath()) + "\nfilea.txt\n");
+        writeFile(new File(workDir, "filea.txt.tmp"), "svool\n");
+        try {
+            new Rekeyer(new FileHandler(), 2).rekey(oldKey.getPath(), newKey.getPath());
+
+            assertEquals("# before rotation\n"
+                    + IntegrityCheck.sha256Hex("svool\n".getBytes(StandardCharsets.UTF_8)) + "  filea.txt\n"
+                    + IntegrityCheck.sha256Hex("dliow\n".getBytes(StandardCharsets.UTF_8)) + " *fileb.txt\n",
+                    Files.readString(manifest.toPath(), StandardCharsets.UTF_8));
+            assertEquals("hello\n",
+                    new ProgramController().getVerifiedFileContents("01", newKey.getPath()).getContents());
+        } finally {
+            manifest.delete();
+        }
+    }
+
+    @Test
+    @DisplayName("rekey refuses a pending journal for different keys")
+    void testRekeyRejectsForeignJournal() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp\n");
+        File workDir = new File(Rekeyer.WORK_DIR);
+        workDir.mkdirs();
+        writeFile(new File(workDir, Rekeyer.JOURNAL_NAME), "keys other\n");
+
+        assertThrows(RuntimeException.class,
+                () -> new Rekeyer(new FileHandler(), 1).rekey(oldKey.getPath(), newKey.getPath()));
+        assertEquals("ifmmp\n", readDataFile("filea.txt"));
+    }
+
+    @Test
+    @DisplayName("rekey rejects an invalid key before touching files")
+    void testRekeyRejectsInvalidKey() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp\n");
+        File badKey = tempDir.resolve("bad.txt").toFile();
+        writeFile(badKey, "abc\n");
+
+        assertThrows(RuntimeException.class,
+                () -> new Rekeyer(new FileHandler(), 1).rekey(oldKey.getPath(), badKey.getPath()));
+        assertEquals("ifmmp\n", readDataFile("filea.txt"));
+    }
+
+    @Test
+    @DisplayName("rekey rejects a new key whose lines use different characters")
+    void testRekeyRejectsNonRoundTripKey() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp\n");
+        File oneWayKey = tempDir.resolve("oneway.txt").toFile();
+        writeFile(oneWayKey, "abc\nxyz\n");
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> new Rekeyer(new FileHandler(), 1).rekey(oldKey.getPath(), oneWayKey.getPath()));
+        assertTrue(e.getMessage().contains("cannot be used for rekey"));
+        assertEquals("ifmmp\n", readDataFile("filea.txt"));
+        assertFalse(new File(Rekeyer.WORK_DIR).exists());
+    }
+
+    @Test
+    @DisplayName("rekey refuses a packed repo before starting a journal")
+    void testRekeyRejectsPackedRepo() throws IOException {
+        writeFile(new File(projectDataDir, "filea.txt"), "ifmmp\n");
+        String containerPath = tempDir.resolve("data.pack").toString();
+        new FileHandler().packDataFiles(containerPath);
+
+        FileHandler packed = new FileHandler(DataContainer.open(containerPath));
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> new Rekeyer(packed, 1).rekey(oldKey.getPath(), newKey.getPath()));
+        assertTrue(e.getMessage().contains("container"), e.getMessage());
+        assertFalse(new File(Rekeyer.WORK_DIR).exists());
+    }
+}
@@ -0,0 +1,22 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Per-thread allocation measurement shared by the allocation budget tests
+final class ThreadAllocation {
+    private ThreadAllocation() {
+    }
+
+    // Bytes allocated by the current thread so far, or -1 if the JVM cannot measure it
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // com.sun.management.ThreadMXBean shares the simple name, so it stays qualified
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}